@@ -0,0 +1,37 @@
+package com.wiblog.oss.bean;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 批量操作结果
+ *
+ * @author panwm
+ * @since 2024/9/14 22:05
+ */
+@Data
+@Accessors(chain = true)
+public class BatchResult {
+
+    /**
+     * 成功数量
+     */
+    private long successCount;
+
+    /**
+     * 失败的对象及失败原因
+     */
+    private Map<String, String> failed = new LinkedHashMap<>();
+
+    /**
+     * 耗时（毫秒）
+     */
+    private long costTime;
+
+    public boolean isSuccess() {
+        return failed.isEmpty();
+    }
+}
@@ -13,7 +13,7 @@ import java.util.Date;
  * @author panwm
  * @since  2023/8/20 17:09
  */
-@Builder
+@Builder(toBuilder = true)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -30,6 +30,8 @@ public class ObjectInfo {
 
     private String ext;
 
+    private String etag;
+
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
     private Date uploadTime;
 }
@@ -0,0 +1,32 @@
+package com.wiblog.oss.bean;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分页列举结果
+ *
+ * @author panwm
+ * @since 2024/9/28 16:20
+ */
+@Data
+@Accessors(chain = true)
+public class ObjectPage<T> {
+
+    /**
+     * 当前页数据
+     */
+    private List<T> items = new ArrayList<>();
+
+    /**
+     * 下一页令牌，没有更多数据时为null
+     */
+    private String nextToken;
+
+    public boolean hasMore() {
+        return nextToken != null;
+    }
+}
@@ -41,6 +41,11 @@ public class ObjectTreeNode extends ObjectInfo {
 
     private List<ObjectTreeNode> children;
 
+    /**
+     * 子节点下一页令牌，仅按层级懒加载时有效，子节点已全部返回时为null
+     */
+    private String nextToken;
+
     public ObjectTreeNode(String name, String uri, String url, Date uploadTime, String type, long size, String ext) {
         this.name = name;
         this.uri = uri;
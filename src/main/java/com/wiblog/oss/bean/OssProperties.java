@@ -4,6 +4,8 @@ package com.wiblog.oss.bean;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.io.File;
+
 /**
  * @author panwm
  */
@@ -61,6 +63,76 @@ public class OssProperties {
      */
     private long connectionTimeout = 10_000;
 
+    /**
+     * 列举对象时的每页数量，最大1000 默认1000
+     */
+    private int listPageSize = 1000;
+
+    /**
+     * 分片并发列举时的最大并发数 默认8
+     */
+    private int listParallelism = 8;
+
+    /**
+     * 按层级加载目录树时允许的最大展开层数 默认10
+     */
+    private int treeMaxDepth = 10;
+
+    /**
+     * 按层级加载目录树时单次返回的最大节点数，超出后其余文件夹不再展开 默认10000
+     */
+    private int treeMaxNodes = 10_000;
+
+    /**
+     * 批量删除时同时执行的 DeleteObjects 请求数 默认4
+     */
+    private int deleteParallelism = 4;
+
+    /**
+     * 拷贝、移动文件夹时同时拷贝的最大对象数 默认16
+     */
+    private int copyParallelism = 16;
+
+    /**
+     * 超过5GB的对象分片拷贝时同时执行的 UploadPartCopy 请求数 默认8
+     */
+    private int copyPartParallelism = 8;
+
+    /**
+     * 同步文件夹时同时上传的最大文件数 默认16
+     */
+    private int syncParallelism = 16;
+
+    /**
+     * 流式上传时按扩展名无法识别内容类型则读取文件头识别 默认false
+     */
+    private boolean contentTypeSniff = false;
+
+    /**
+     * 下载配置
+     */
+    private Download download = new Download();
+
+    /**
+     * 上传配置
+     */
+    private Upload upload = new Upload();
+
+    /**
+     * 缓存配置
+     */
+    private Cache cache = new Cache();
+
+    /**
+     * 本地key索引配置
+     */
+    private Index index = new Index();
+
+    /**
+     * 指标配置
+     */
+    private Metrics metrics = new Metrics();
+
     public OssProperties() {
     }
 
@@ -89,6 +161,217 @@ public class OssProperties {
          */
         private boolean enable = false;
 
+        /**
+         * 是否启用秒传端点，需同时启用Web端点 默认false
+         */
+        private boolean instantEnable = false;
+
+    }
+
+    @Data
+    public static class Download {
+
+        /**
+         * 流式读取的背压缓冲区大小 默认4MB
+         */
+        private long streamBufferSize = 4 * 1024 * 1024L;
+
+        /**
+         * 多段下载时间隔不超过该值的分段合并为一次上游请求 默认256KB
+         */
+        private long rangeCoalesceGap = 256 * 1024L;
+
+        /**
+         * 下载文件时的最大并发分段数，小于等于1时不分段 默认8
+         */
+        private int parallelism = 8;
+
+        /**
+         * 文件大小达到该值时分段并发下载 默认64MB
+         */
+        private long parallelThreshold = 64 * 1024 * 1024L;
+
+        /**
+         * 并发下载的分段大小 默认16MB
+         */
+        private long partSize = 16 * 1024 * 1024L;
+
+    }
+
+    @Data
+    public static class Upload {
+
+        /**
+         * 分片上传的分片大小，同时作为 CRT 客户端的最小分片大小 默认10MB
+         */
+        private long partSize = 10 * 1024 * 1024L;
+
+        /**
+         * 上传文件时的最大并发分片数，小于等于1时交由传输管理器处理 默认8
+         */
+        private int parallelism = 8;
+
+        /**
+         * 文件大小达到该值时分片并发上传 默认64MB
+         */
+        private long parallelThreshold = 64 * 1024 * 1024L;
+
+        /**
+         * 未知长度流式上传时的分片大小，不小于5MB，文件大小上限为其10000倍 默认10MB
+         */
+        private int streamPartSize = 10 * 1024 * 1024;
+
+        /**
+         * 流式上传时同时上传的最大分片数 默认4
+         */
+        private int maxInFlightParts = 4;
+
+        /**
+         * 分片缓冲区池可占用的堆外内存上限，流式上传与分片上传共享，单个分片不能超过该上限 默认160MB
+         */
+        private long bufferPoolMaxSize = 160 * 1024 * 1024L;
+
+        /**
+         * 秒传使用的本地hash索引最大记录数 默认100000
+         */
+        private int hashIndexSize = 100_000;
+
+        /**
+         * 合并分片后是否校验客户端声明的hash，通过后写入hash元数据供秒传使用；
+         * 校验需重新读取整个对象并原地拷贝一次 默认false
+         */
+        private boolean hashVerify = false;
+
+        /**
+         * 分片上传进度存储
+         */
+        private Session session = new Session();
+
+        @Data
+        public static class Session {
+
+            /**
+             * 存储方式 memory/file 默认memory
+             */
+            private String type = "memory";
+
+            /**
+             * file 方式的存储目录
+             */
+            private String dir = System.getProperty("java.io.tmpdir") + File.separator + "oss-upload-session";
+
+            /**
+             * memory 方式的最大任务数 默认10000
+             */
+            private int maxSize = 10_000;
+
+            /**
+             * 任务过期时间（毫秒） 默认7天
+             */
+            private long ttl = 7 * 24 * 60 * 60 * 1000L;
+
+        }
+
+    }
+
+    @Data
+    public static class Cache {
+
+        /**
+         * 分块读缓存
+         */
+        private Block block = new Block();
+
+        /**
+         * 元数据缓存
+         */
+        private Metadata metadata = new Metadata();
+
+        @Data
+        public static class Block {
+
+            /**
+             * 是否启用分块读缓存 默认false
+             */
+            private boolean enable = false;
+
+            /**
+             * 缓存目录 默认系统临时目录下的oss-block-cache
+             */
+            private String dir = System.getProperty("java.io.tmpdir") + File.separator + "oss-block-cache";
+
+            /**
+             * 块大小 默认1MB
+             */
+            private int blockSize = 1024 * 1024;
+
+            /**
+             * 缓存总大小上限 默认1GB
+             */
+            private long maxSize = 1024 * 1024 * 1024L;
+
+            /**
+             * 单次读取超过 max-size 的该比例时直接读取对象，避免大范围读取冲刷缓存 默认0.25
+             */
+            private double maxRangeRatio = 0.25;
+
+        }
+
+        @Data
+        public static class Metadata {
+
+            /**
+             * 是否启用元数据缓存 默认false
+             */
+            private boolean enable = false;
+
+            /**
+             * 最大缓存条数 默认10000
+             */
+            private int maxSize = 10_000;
+
+            /**
+             * 过期时间 默认60s
+             */
+            private long ttl = 60_000;
+
+            /**
+             * 不存在对象的过期时间，为0时不缓存 默认5s
+             */
+            private long negativeTtl = 5_000;
+
+        }
+
+    }
+
+    @Data
+    public static class Index {
+
+        /**
+         * 是否启用本地key索引，启用后前缀和关键字查询由索引回答 默认false
+         */
+        private boolean enable = false;
+
+        /**
+         * 单个存储桶的最大key数量，超过时不建立索引 默认1000000
+         */
+        private int maxKeys = 1_000_000;
+
+        /**
+         * 整体重建索引的间隔，其他客户端的写入在重建后可见 默认10分钟
+         */
+        private long refreshInterval = 10 * 60 * 1000L;
+
+    }
+
+    @Data
+    public static class Metrics {
+
+        /**
+         * 存在 MeterRegistry 时是否记录指标 默认true
+         */
+        private boolean enable = true;
+
     }
 
 }
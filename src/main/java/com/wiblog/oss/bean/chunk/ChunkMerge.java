@@ -42,6 +42,6 @@ public class ChunkMerge {
     @NotBlank
     private String guid;
 
-    @ApiModelProperty(value = "分片结果", required = true)
+    @ApiModelProperty(value = "分片结果，为空时使用服务端记录的上传进度")
     private List<ChunkTarget> chunkTargetList;
 }
@@ -7,6 +7,9 @@ import lombok.experimental.Accessors;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * 分片进度
@@ -31,6 +34,21 @@ public class ChunkProcess {
      */
     private List<ChunkPart> chunkList = new ArrayList<>();
 
+    /**
+     * 文件内容hash，合并后写入hash索引
+     */
+    private String hash;
+
+    /**
+     * 计算缺失的分片号
+     *
+     * @param totalChunks 分片总数
+     * @return 尚未上传的分片号，从1开始
+     */
+    public List<Integer> missingChunks(int totalChunks) {
+        Set<Integer> uploaded = chunkList.stream().map(ChunkPart::getChunkNumber).collect(Collectors.toSet());
+        return IntStream.rangeClosed(1, totalChunks).filter(e -> !uploaded.contains(e)).boxed().collect(Collectors.toList());
+    }
 
     /**
      * 使用一个类来表示每个分片保存的信息
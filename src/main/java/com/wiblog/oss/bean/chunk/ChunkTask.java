@@ -25,4 +25,10 @@ public class ChunkTask {
     @ApiModelProperty(value = "存放路径（通过文件MD5生成）", required = true)
     @NotBlank
     private String path;
+
+    /**
+     * 文件内容hash
+     */
+    @ApiModelProperty(value = "文件内容hash（如MD5），用于秒传")
+    private String hash;
 }
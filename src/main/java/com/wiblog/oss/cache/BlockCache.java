@@ -0,0 +1,430 @@
+package com.wiblog.oss.cache;
+
+import com.wiblog.oss.util.ByteRange;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.DigestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分块读缓存
+ * <p>
+ * 对象按固定大小对齐切块，以 bucket/key/ETag 为键落盘并通过内存映射读取，
+ * 堆内只保存 LRU 索引，总大小超过上限时淘汰最久未使用的块。
+ * ETag 变化后旧块不再命中，随后被自然淘汰
+ * <p>
+ * 读取流使用中的块被淘汰时不立即删除文件，其大小继续计入总大小，流读过该块或关闭后再删除；
+ * 映射内存由 GC 回收
+ *
+ * @author panwm
+ * @since 2024/9/8 20:31
+ */
+@Slf4j
+public class BlockCache {
+
+    private static final String SUFFIX = ".blk";
+
+    private final Path directory;
+
+    private final int blockSize;
+
+    private final long maxSize;
+
+    /**
+     * 单次读取超过 maxSize 的该比例时不经过缓存
+     */
+    private final double maxRangeRatio;
+
+    /**
+     * 访问顺序的 LRU 索引
+     */
+    private final LinkedHashMap<String, Block> index = new LinkedHashMap<>(256, 0.75f, true);
+
+    /**
+     * 已淘汰但仍被读取流引用的块
+     */
+    private final Set<Path> retained = new HashSet<>();
+
+    /**
+     * 正在加载的块，同一块的并发请求只回源一次
+     */
+    private final Map<String, CompletableFuture<Block>> loading = new ConcurrentHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * 索引中及被引用的已淘汰块的总大小
+     */
+    private long currentSize;
+
+    public BlockCache(Path directory, int blockSize, long maxSize) {
+        this(directory, blockSize, maxSize, 1);
+    }
+
+    public BlockCache(Path directory, int blockSize, long maxSize, double maxRangeRatio) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("illegal argument oss.cache.block.block-size");
+        }
+        this.directory = directory;
+        this.blockSize = blockSize;
+        this.maxSize = maxSize;
+        this.maxRangeRatio = maxRangeRatio;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new IllegalStateException("无法创建缓存目录: " + directory, e);
+        }
+        // 索引只存在于内存，启动时清理上次遗留的块文件
+        clear();
+    }
+
+    /**
+     * 读取对象的一个分段，首个块立即加载，其余块在读到时加载
+     *
+     * @param bucketName 存储桶
+     * @param objectName 文件全路径
+     * @param eTag       对象ETag
+     * @param objectSize 对象大小
+     * @param range      分段
+     * @param loader     未命中时的回源方式
+     * @return 文件流，分段过大不经过缓存时返回null
+     * @throws IOException 回源失败
+     */
+    public InputStream read(String bucketName, String objectName, String eTag, long objectSize,
+                            ByteRange range, BlockLoader loader) throws IOException {
+        if (range.length() > maxSize * maxRangeRatio) {
+            return null;
+        }
+        BlocksInputStream inputStream = new BlocksInputStream(bucketName, objectName, eTag, objectSize, range, loader);
+        try {
+            inputStream.buffer();
+        } catch (IOException | RuntimeException e) {
+            inputStream.close();
+            throw e;
+        }
+        return inputStream;
+    }
+
+    /**
+     * 获取块并增加引用，使用完毕后需调用 release
+     */
+    private Block acquire(String id, ByteRange blockRange, BlockLoader loader) throws IOException {
+        synchronized (index) {
+            Block cached = index.get(id);
+            if (cached != null) {
+                cached.refs++;
+                return cached;
+            }
+        }
+        CompletableFuture<Block> future = new CompletableFuture<>();
+        CompletableFuture<Block> existing = loading.putIfAbsent(id, future);
+        if (existing != null) {
+            Block block = await(existing);
+            synchronized (index) {
+                block.refs++;
+            }
+            return block;
+        }
+        try {
+            ByteBuffer data = loader.load(blockRange);
+            if (data.remaining() != blockRange.length()) {
+                throw new IOException("块长度不一致，对象可能已被修改");
+            }
+            Block block = store(id, data);
+            future.complete(block);
+            return block;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(id, future);
+        }
+    }
+
+    private void release(Block block) {
+        synchronized (index) {
+            block.refs--;
+            if (block.evicted && block.refs == 0) {
+                free(block);
+            }
+        }
+    }
+
+    private Block await(CompletableFuture<Block> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The operation was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * 写入块文件并加入索引，返回的块已持有一个引用
+     */
+    private Block store(String id, ByteBuffer data) throws IOException {
+        // 文件名带序号，同一块被淘汰后重新加载时不会覆盖仍在读取的旧文件
+        Path file = directory.resolve(id + "-" + sequence.incrementAndGet() + SUFFIX);
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        Block block = new Block(file, mapped);
+        block.refs = 1;
+        synchronized (index) {
+            Block previous = index.put(id, block);
+            if (previous != null) {
+                evict(previous);
+            }
+            currentSize += block.size();
+            evict();
+        }
+        return block;
+    }
+
+    /**
+     * 淘汰最久未使用的块直到总大小不超过上限，被引用的块仍计入总大小
+     */
+    private void evict() {
+        Iterator<Block> iterator = index.values().iterator();
+        while (currentSize > maxSize && iterator.hasNext()) {
+            Block eldest = iterator.next();
+            iterator.remove();
+            evict(eldest);
+        }
+    }
+
+    private void evict(Block block) {
+        block.evicted = true;
+        if (block.refs == 0) {
+            free(block);
+        } else {
+            retained.add(block.file);
+        }
+    }
+
+    private void free(Block block) {
+        if (block.freed) {
+            return;
+        }
+        block.freed = true;
+        currentSize -= block.size();
+        retained.remove(block.file);
+        delete(block.file);
+    }
+
+    /**
+     * 清空缓存，仍被读取的块在读取结束后删除
+     */
+    public void clear() {
+        synchronized (index) {
+            index.values().forEach(this::evict);
+            index.clear();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+                for (Path file : files) {
+                    if (!retained.contains(file)) {
+                        delete(file);
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("清理缓存目录失败: {}", directory, e);
+            }
+        }
+    }
+
+    private void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.debug("删除缓存块失败: {}", file, e);
+        }
+    }
+
+    private String blockId(String bucketName, String objectName, String eTag, long blockIndex) {
+        String key = bucketName + "/" + objectName + "@" + eTag;
+        return DigestUtils.md5DigestAsHex(key.getBytes(StandardCharsets.UTF_8)) + "-" + blockIndex;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * 当前占用的缓存大小，包含已淘汰但仍被读取的块
+     *
+     * @return 字节数
+     */
+    public long getCurrentSize() {
+        synchronized (index) {
+            return currentSize;
+        }
+    }
+
+    /**
+     * 缓存未命中时的回源方式
+     */
+    @FunctionalInterface
+    public interface BlockLoader {
+
+        /**
+         * 读取一个完整的块
+         *
+         * @param blockRange 块所在区间
+         * @return 块内容
+         * @throws IOException 读取失败
+         */
+        ByteBuffer load(ByteRange blockRange) throws IOException;
+    }
+
+    /**
+     * 映射的块文件及其引用计数，引用计数等状态由 index 锁保护
+     */
+    private static class Block {
+
+        private final Path file;
+
+        private final MappedByteBuffer buffer;
+
+        private int refs;
+
+        private boolean evicted;
+
+        private boolean freed;
+
+        Block(Path file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        long size() {
+            return buffer.capacity();
+        }
+    }
+
+    /**
+     * 按需逐块加载的输入流，只持有当前块的引用
+     */
+    private class BlocksInputStream extends InputStream {
+
+        private final String bucketName;
+
+        private final String objectName;
+
+        private final String eTag;
+
+        private final long objectSize;
+
+        private final ByteRange range;
+
+        private final BlockLoader loader;
+
+        private long nextBlock;
+
+        private Block block;
+
+        private ByteBuffer slice;
+
+        private boolean closed;
+
+        BlocksInputStream(String bucketName, String objectName, String eTag, long objectSize, ByteRange range, BlockLoader loader) {
+            this.bucketName = bucketName;
+            this.objectName = objectName;
+            this.eTag = eTag;
+            this.objectSize = objectSize;
+            this.range = range;
+            this.loader = loader;
+            this.nextBlock = range.getStart() / blockSize;
+        }
+
+        /**
+         * 当前块读完后释放并加载下一块
+         *
+         * @return 当前可读的分片，读完时为null
+         */
+        private ByteBuffer buffer() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            while (slice == null || !slice.hasRemaining()) {
+                releaseBlock();
+                if (nextBlock > range.getEnd() / blockSize) {
+                    return null;
+                }
+                long blockStart = nextBlock * blockSize;
+                ByteRange blockRange = new ByteRange(blockStart, Math.min(blockStart + blockSize, objectSize) - 1);
+                block = acquire(blockId(bucketName, objectName, eTag, nextBlock), blockRange, loader);
+                nextBlock++;
+                ByteBuffer duplicate = block.buffer.duplicate();
+                duplicate.limit((int) (Math.min(range.getEnd(), blockRange.getEnd()) - blockStart + 1));
+                duplicate.position((int) (Math.max(range.getStart(), blockStart) - blockStart));
+                slice = duplicate.slice();
+            }
+            return slice;
+        }
+
+        private void releaseBlock() {
+            if (block != null) {
+                release(block);
+                block = null;
+                slice = null;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            ByteBuffer buffer = buffer();
+            return buffer == null ? -1 : buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            ByteBuffer buffer = buffer();
+            if (buffer == null) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return closed || slice == null ? 0 : slice.remaining();
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                releaseBlock();
+                closed = true;
+            }
+        }
+    }
+}
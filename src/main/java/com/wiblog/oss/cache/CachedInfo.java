@@ -0,0 +1,72 @@
+package com.wiblog.oss.cache;
+
+import com.wiblog.oss.bean.ObjectInfo;
+
+/**
+ * 元数据缓存的查询结果，区分未命中、命中存在的对象和命中不存在的对象
+ *
+ * @author panwm
+ * @since 2024/10/6 18:30
+ */
+public final class CachedInfo {
+
+    private static final CachedInfo MISS = new CachedInfo(false, null);
+
+    private static final CachedInfo NOT_FOUND = new CachedInfo(true, null);
+
+    private final boolean present;
+
+    private final ObjectInfo objectInfo;
+
+    private CachedInfo(boolean present, ObjectInfo objectInfo) {
+        this.present = present;
+        this.objectInfo = objectInfo;
+    }
+
+    /**
+     * 未命中，需要请求服务端
+     */
+    public static CachedInfo miss() {
+        return MISS;
+    }
+
+    /**
+     * 命中，已知对象不存在
+     */
+    public static CachedInfo notFound() {
+        return NOT_FOUND;
+    }
+
+    /**
+     * 命中，对象存在
+     *
+     * @param objectInfo 对象信息
+     */
+    public static CachedInfo of(ObjectInfo objectInfo) {
+        if (objectInfo == null) {
+            throw new IllegalArgumentException("objectInfo is null, use notFound()");
+        }
+        return new CachedInfo(true, objectInfo);
+    }
+
+    /**
+     * @return 是否命中缓存，包括已知对象不存在的情况
+     */
+    public boolean isPresent() {
+        return present;
+    }
+
+    /**
+     * @return 是否命中且已知对象不存在
+     */
+    public boolean isNegative() {
+        return present && objectInfo == null;
+    }
+
+    /**
+     * @return 命中且对象存在时的对象信息，其他情况为null
+     */
+    public ObjectInfo getObjectInfo() {
+        return objectInfo;
+    }
+}
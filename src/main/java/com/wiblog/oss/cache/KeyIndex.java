@@ -0,0 +1,69 @@
+package com.wiblog.oss.cache;
+
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 对象key索引，在本地回答前缀和关键字查询，避免每次重新列举存储桶
+ * <p>
+ * 首次查询时通过列举建立索引，之后由上传、删除操作增量维护；
+ * 其他客户端的写入在索引刷新后可见。可注册自定义实现的 Bean 替换默认实现
+ *
+ * @author panwm
+ * @since 2024/9/29 20:16
+ */
+public interface KeyIndex {
+
+    /**
+     * 查询前缀下key包含关键字的对象，按key排序
+     *
+     * @param bucketName 存储桶
+     * @param prefix     前缀
+     * @param keyword    关键字，为空时返回前缀下全部对象
+     * @param loader     建立或刷新索引时的列举方式
+     * @return 对象列表，无法建立索引时返回null，由调用方直接列举
+     */
+    List<S3Object> search(String bucketName, String prefix, String keyword, KeyLoader loader);
+
+    /**
+     * 记录上传的对象
+     *
+     * @param bucketName 存储桶
+     * @param objectName 对象key
+     * @param size       对象大小
+     */
+    void put(String bucketName, String objectName, long size);
+
+    /**
+     * 移除删除的对象
+     *
+     * @param bucketName 存储桶
+     * @param objectName 对象key
+     */
+    void remove(String bucketName, String objectName);
+
+    /**
+     * 前缀下的对象被批量修改后标记失效，下次查询时重新列举该前缀
+     *
+     * @param bucketName 存储桶
+     * @param prefix     前缀
+     */
+    void invalidatePrefix(String bucketName, String prefix);
+
+    /**
+     * 建立索引时的列举方式
+     */
+    @FunctionalInterface
+    interface KeyLoader {
+
+        /**
+         * 列举前缀下的全部对象
+         *
+         * @param prefix 前缀，为空时列举整个存储桶
+         * @return 对象迭代器
+         */
+        Iterator<S3Object> list(String prefix);
+    }
+}
@@ -0,0 +1,282 @@
+package com.wiblog.oss.cache;
+
+import com.wiblog.oss.util.Util;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于有序跳表的本地key索引
+ * <p>
+ * 每个存储桶一份按key排序的索引，前缀查询直接定位子区间，关键字查询只扫描该区间。
+ * 索引在后台线程中建立，超过 refreshInterval 后整体重建，批量修改的前缀单独重新列举，
+ * 建立或重新列举期间涉及的查询返回null，由调用方直接列举；
+ * key数量超过 maxKeys 的存储桶暂不建立索引，refreshInterval 后再次尝试
+ *
+ * @author panwm
+ * @since 2024/9/29 20:40
+ */
+@Slf4j
+public class LocalKeyIndex implements KeyIndex {
+
+    private final int maxKeys;
+
+    private final long refreshInterval;
+
+    private final Map<String, BucketIndex> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * 建立索引的后台线程
+     */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "oss-key-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * @param maxKeys         单个存储桶的最大key数量
+     * @param refreshInterval 整体重建索引的间隔（毫秒）
+     */
+    public LocalKeyIndex(int maxKeys, long refreshInterval) {
+        this.maxKeys = maxKeys;
+        this.refreshInterval = refreshInterval;
+    }
+
+    @Override
+    public List<S3Object> search(String bucketName, String prefix, String keyword, KeyLoader loader) {
+        BucketIndex index = buckets.computeIfAbsent(bucketName, k -> new BucketIndex());
+        String start = prefix == null ? "" : prefix;
+        if (!index.isAvailable(start, loader)) {
+            return null;
+        }
+        NavigableMap<String, Entry> range = index.keys.subMap(start, true, start + Character.MAX_VALUE, false);
+        List<S3Object> result = new ArrayList<>();
+        for (Map.Entry<String, Entry> e : range.entrySet()) {
+            if (Util.isBlank(keyword) || e.getKey().contains(keyword)) {
+                result.add(S3Object.builder()
+                        .key(e.getKey())
+                        .size(e.getValue().size)
+                        .lastModified(Instant.ofEpochMilli(e.getValue().lastModified))
+                        .build());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void put(String bucketName, String objectName, long size) {
+        BucketIndex index = buckets.get(bucketName);
+        if (index != null) {
+            index.apply(objectName, new Entry(size, System.currentTimeMillis()));
+        }
+    }
+
+    @Override
+    public void remove(String bucketName, String objectName) {
+        BucketIndex index = buckets.get(bucketName);
+        if (index != null) {
+            index.apply(objectName, null);
+        }
+    }
+
+    @Override
+    public void invalidatePrefix(String bucketName, String prefix) {
+        BucketIndex index = buckets.get(bucketName);
+        if (index != null) {
+            index.stalePrefixes.put(prefix == null ? "" : prefix, sequence.incrementAndGet());
+        }
+    }
+
+    /**
+     * 停止后台线程
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private class BucketIndex {
+
+        private volatile ConcurrentSkipListMap<String, Entry> keys = new ConcurrentSkipListMap<>();
+
+        /**
+         * 上次整体重建的时间，为0时尚未建立
+         */
+        private volatile long loadedAt;
+
+        /**
+         * 上次因key数量超过上限放弃建立的时间，为0时未超过
+         */
+        private volatile long overflowAt;
+
+        /**
+         * 待重新列举的前缀及标记时的序号，序号用于判断重新列举期间是否再次被标记
+         */
+        private final Map<String, Long> stalePrefixes = new ConcurrentHashMap<>();
+
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        /**
+         * 列举期间发生的修改，列举完成后重放，避免被列举结果覆盖
+         */
+        private volatile Map<String, Optional<Entry>> pending;
+
+        /**
+         * 判断索引能否回答该前缀的查询，需要时在后台重建
+         *
+         * @return 索引是否可用
+         */
+        boolean isAvailable(String prefix, KeyLoader loader) {
+            long now = System.currentTimeMillis();
+            if (overflowAt > 0 && now - overflowAt < refreshInterval) {
+                return false;
+            }
+            boolean expired = loadedAt == 0 || now - loadedAt >= refreshInterval;
+            if (expired || !stalePrefixes.isEmpty()) {
+                scheduleRefresh(loader);
+            }
+            if (expired) {
+                return false;
+            }
+            for (String stale : stalePrefixes.keySet()) {
+                if (stale.startsWith(prefix) || prefix.startsWith(stale)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void scheduleRefresh(KeyLoader loader) {
+            if (!refreshing.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        refresh(loader);
+                    } catch (RuntimeException e) {
+                        log.warn("建立本地索引失败", e);
+                    } finally {
+                        refreshing.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                refreshing.set(false);
+            }
+        }
+
+        private void refresh(KeyLoader loader) {
+            Map<String, Long> stale = new HashMap<>(stalePrefixes);
+            pending = new ConcurrentHashMap<>();
+            try {
+                long startTime = System.currentTimeMillis();
+                if (loadedAt == 0 || startTime - loadedAt >= refreshInterval) {
+                    ConcurrentSkipListMap<String, Entry> loaded = load(loader, "");
+                    if (loaded == null) {
+                        overflow();
+                        return;
+                    }
+                    keys = loaded;
+                    replay();
+                    overflowAt = 0;
+                    loadedAt = startTime;
+                    log.debug("本地索引建立完成，共 {} 个，耗时 {}ms", loaded.size(), System.currentTimeMillis() - startTime);
+                } else {
+                    for (String prefix : stale.keySet()) {
+                        ConcurrentSkipListMap<String, Entry> loaded = load(loader, prefix);
+                        if (loaded == null) {
+                            overflow();
+                            return;
+                        }
+                        keys.subMap(prefix, true, prefix + Character.MAX_VALUE, false).clear();
+                        keys.putAll(loaded);
+                    }
+                    replay();
+                    if (keys.size() > maxKeys) {
+                        overflow();
+                        return;
+                    }
+                }
+                // 列举期间再次被标记的前缀保留，下次重新列举
+                stale.forEach(stalePrefixes::remove);
+            } finally {
+                pending = null;
+            }
+        }
+
+        /**
+         * 重放列举期间的修改
+         */
+        private void replay() {
+            pending.forEach((key, entry) -> {
+                if (entry.isPresent()) {
+                    keys.put(key, entry.get());
+                } else {
+                    keys.remove(key);
+                }
+            });
+        }
+
+        private void overflow() {
+            overflowAt = System.currentTimeMillis();
+            loadedAt = 0;
+            keys = new ConcurrentSkipListMap<>();
+            log.warn("存储桶key数量超过 {}，{}ms 内不建立本地索引", maxKeys, refreshInterval);
+        }
+
+        private ConcurrentSkipListMap<String, Entry> load(KeyLoader loader, String prefix) {
+            ConcurrentSkipListMap<String, Entry> loaded = new ConcurrentSkipListMap<>();
+            Iterator<S3Object> objects = loader.list(prefix);
+            while (objects.hasNext()) {
+                S3Object object = objects.next();
+                if (loaded.size() >= maxKeys) {
+                    return null;
+                }
+                loaded.put(object.key(), new Entry(object.size(), object.lastModified().toEpochMilli()));
+            }
+            return loaded;
+        }
+
+        void apply(String key, Entry entry) {
+            Map<String, Optional<Entry>> journal = pending;
+            if (journal != null) {
+                journal.put(key, Optional.ofNullable(entry));
+            }
+            if (entry != null) {
+                keys.put(key, entry);
+            } else {
+                keys.remove(key);
+            }
+        }
+
+    }
+
+    private static final class Entry {
+
+        private final long size;
+
+        private final long lastModified;
+
+        Entry(long size, long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+}
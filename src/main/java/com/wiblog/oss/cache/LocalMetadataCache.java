@@ -0,0 +1,96 @@
+package com.wiblog.oss.cache;
+
+import com.wiblog.oss.bean.ObjectInfo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 基于 LRU 的本地元数据缓存，按条数和过期时间淘汰，不存在的对象使用较短的过期时间
+ *
+ * @author panwm
+ * @since 2024/9/10 21:40
+ */
+public class LocalMetadataCache implements MetadataCache {
+
+    private final long ttl;
+
+    private final long negativeTtl;
+
+    private final Map<String, Entry> cache;
+
+    /**
+     * @param maxSize     最大缓存条数
+     * @param ttl         存在对象的过期时间（毫秒）
+     * @param negativeTtl 不存在对象的过期时间（毫秒），为0时不缓存
+     */
+    public LocalMetadataCache(int maxSize, long ttl, long negativeTtl) {
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.cache = new LinkedHashMap<String, Entry>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    @Override
+    public CachedInfo get(String bucketName, String objectName) {
+        String key = cacheKey(bucketName, objectName);
+        synchronized (cache) {
+            Entry entry = cache.get(key);
+            if (entry == null) {
+                return CachedInfo.miss();
+            }
+            if (entry.expireAt < System.currentTimeMillis()) {
+                cache.remove(key);
+                return CachedInfo.miss();
+            }
+            return entry.objectInfo == null ? CachedInfo.notFound() : CachedInfo.of(entry.objectInfo.toBuilder().build());
+        }
+    }
+
+    @Override
+    public void put(String bucketName, String objectName, ObjectInfo objectInfo) {
+        long expire = objectInfo == null ? negativeTtl : ttl;
+        if (expire <= 0) {
+            return;
+        }
+        Entry entry = new Entry(objectInfo == null ? null : objectInfo.toBuilder().build(), System.currentTimeMillis() + expire);
+        synchronized (cache) {
+            cache.put(cacheKey(bucketName, objectName), entry);
+        }
+    }
+
+    @Override
+    public void invalidate(String bucketName, String objectName) {
+        synchronized (cache) {
+            cache.remove(cacheKey(bucketName, objectName));
+        }
+    }
+
+    @Override
+    public void invalidatePrefix(String bucketName, String prefix) {
+        String keyPrefix = cacheKey(bucketName, prefix);
+        synchronized (cache) {
+            cache.keySet().removeIf(key -> key.startsWith(keyPrefix));
+        }
+    }
+
+    private String cacheKey(String bucketName, String objectName) {
+        return bucketName + "/" + objectName;
+    }
+
+    private static class Entry {
+
+        private final ObjectInfo objectInfo;
+
+        private final long expireAt;
+
+        Entry(ObjectInfo objectInfo, long expireAt) {
+            this.objectInfo = objectInfo;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.wiblog.oss.cache;
+
+import com.wiblog.oss.bean.ObjectInfo;
+
+/**
+ * 对象元数据缓存，位于 getObjectInfo / checkExist 之前
+ * <p>
+ * 可注册自定义实现的 Bean 替换默认的本地缓存
+ *
+ * @author panwm
+ * @since 2024/9/10 21:12
+ */
+public interface MetadataCache {
+
+    /**
+     * 获取缓存的对象信息
+     *
+     * @param bucketName 存储桶
+     * @param objectName 对象key
+     * @return 查询结果，未命中时为 {@link CachedInfo#miss()}，不为null
+     */
+    CachedInfo get(String bucketName, String objectName);
+
+    /**
+     * 写入缓存
+     *
+     * @param bucketName 存储桶
+     * @param objectName 对象key
+     * @param objectInfo 对象信息，为null表示对象不存在
+     */
+    void put(String bucketName, String objectName, ObjectInfo objectInfo);
+
+    /**
+     * 对象被修改或删除后失效缓存
+     *
+     * @param bucketName 存储桶
+     * @param objectName 对象key
+     */
+    void invalidate(String bucketName, String objectName);
+
+    /**
+     * 失效某个前缀下的全部缓存
+     *
+     * @param bucketName 存储桶
+     * @param prefix     前缀
+     */
+    void invalidatePrefix(String bucketName, String prefix);
+}
@@ -1,10 +1,28 @@
 package com.wiblog.oss.config;
 
 import com.wiblog.oss.bean.OssProperties;
+import com.wiblog.oss.cache.KeyIndex;
+import com.wiblog.oss.cache.LocalKeyIndex;
+import com.wiblog.oss.cache.LocalMetadataCache;
+import com.wiblog.oss.cache.MetadataCache;
 import com.wiblog.oss.controller.OssController;
+import com.wiblog.oss.controller.OssInstantController;
+import com.wiblog.oss.metrics.MicrometerOssMetrics;
+import com.wiblog.oss.metrics.OssMetrics;
+import com.wiblog.oss.service.OssDependencies;
 import com.wiblog.oss.service.OssTemplate;
+import com.wiblog.oss.store.FileUploadSessionStore;
+import com.wiblog.oss.store.HashIndex;
+import com.wiblog.oss.store.LocalHashIndex;
+import com.wiblog.oss.store.LocalUploadSessionStore;
+import com.wiblog.oss.store.UploadSessionStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
@@ -12,6 +30,8 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.nio.file.Paths;
+
 /**
  * 自动配置类
  * @author panwm
@@ -19,39 +39,134 @@ import org.springframework.context.annotation.Configuration;
 @Configuration(proxyBeanMethods = false)
 @ConditionalOnProperty(prefix = OssProperties.PREFIX, name = "enable", havingValue = "true")
 @EnableConfigurationProperties({ OssProperties.class })
+@AutoConfigureAfter(name = "org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration")
 public class OssAutoConfiguration {
 
     private static final Logger log = LoggerFactory.getLogger(OssAutoConfiguration.class);
 
-    /**
-     *
-     * @return OSS操作模板
-     */
     /**
      * OSS操作模板
      * @param properties properties配置
+     * @param metadataCache 元数据缓存
+     * @param uploadSessionStore 分片上传进度存储
+     * @param hashIndex 内容hash索引
+     * @param keyIndex 本地key索引
+     * @param metrics 指标记录
      * @return OSS操作模板
      */
     @Bean(destroyMethod = "stop")
     @ConditionalOnMissingBean(OssTemplate.class)
-    public OssTemplate ossTemplate(OssProperties properties) {
+    public OssTemplate ossTemplate(OssProperties properties, ObjectProvider<MetadataCache> metadataCache,
+                                   ObjectProvider<UploadSessionStore> uploadSessionStore, ObjectProvider<HashIndex> hashIndex,
+                                   ObjectProvider<KeyIndex> keyIndex, ObjectProvider<OssMetrics> metrics) {
         log.info("========== Initializing OSS ==========");
-        return new OssTemplate(properties);
+        OssDependencies dependencies = new OssDependencies()
+                .setMetadataCache(metadataCache.getIfAvailable())
+                .setUploadSessionStore(uploadSessionStore.getIfAvailable())
+                .setHashIndex(hashIndex.getIfAvailable())
+                .setKeyIndex(keyIndex.getIfAvailable())
+                .setMetrics(metrics.getIfAvailable());
+        return new OssTemplate(properties, dependencies);
+    }
+
+    /**
+     * 元数据缓存
+     * @param properties properties配置
+     * @return 本地元数据缓存
+     */
+    @Bean
+    @ConditionalOnMissingBean(MetadataCache.class)
+    @ConditionalOnProperty(prefix = OssProperties.PREFIX, name = "cache.metadata.enable", havingValue = "true")
+    public MetadataCache metadataCache(OssProperties properties) {
+        OssProperties.Cache.Metadata metadata = properties.getCache().getMetadata();
+        return new LocalMetadataCache(metadata.getMaxSize(), metadata.getTtl(), metadata.getNegativeTtl());
+    }
+
+    /**
+     * 分片上传进度存储
+     * @param properties properties配置
+     * @return 上传进度存储
+     */
+    @Bean
+    @ConditionalOnMissingBean(UploadSessionStore.class)
+    public UploadSessionStore uploadSessionStore(OssProperties properties) {
+        OssProperties.Upload.Session session = properties.getUpload().getSession();
+        if ("file".equalsIgnoreCase(session.getType())) {
+            return new FileUploadSessionStore(Paths.get(session.getDir()), session.getTtl());
+        }
+        return new LocalUploadSessionStore(session.getMaxSize(), session.getTtl());
+    }
+
+    /**
+     * 内容hash索引
+     * @param properties properties配置
+     * @return 本地hash索引
+     */
+    @Bean
+    @ConditionalOnMissingBean(HashIndex.class)
+    public HashIndex hashIndex(OssProperties properties) {
+        return new LocalHashIndex(properties.getUpload().getHashIndexSize());
+    }
+
+    /**
+     * 本地key索引
+     * @param properties properties配置
+     * @return 本地key索引
+     */
+    @Bean
+    @ConditionalOnMissingBean(KeyIndex.class)
+    @ConditionalOnProperty(prefix = OssProperties.PREFIX, name = "index.enable", havingValue = "true")
+    public KeyIndex keyIndex(OssProperties properties) {
+        OssProperties.Index index = properties.getIndex();
+        return new LocalKeyIndex(index.getMaxKeys(), index.getRefreshInterval());
     }
 
     /**
      * OSS端点信息
-     * @param template oss操作模版
+     * @param template   oss操作模版
+     * @param properties oss配置
      * @return oss远程服务端点
      */
     @Bean
     @ConditionalOnWebApplication
     @ConditionalOnProperty(prefix = OssProperties.PREFIX, name = "http.enable", havingValue = "true")
-    public OssController ossController(OssTemplate template) {
+    public OssController ossController(OssTemplate template, OssProperties properties) {
         log.info("========== Initializing OSS Endpoint ==========");
-        return new OssController(template);
+        return new OssController(template, properties);
+    }
+
+    /**
+     * 秒传端点，可凭hash拷贝桶内已有对象，默认关闭
+     * @param template oss操作模版
+     * @return 秒传端点
+     */
+    @Bean
+    @ConditionalOnWebApplication
+    @ConditionalOnProperty(prefix = OssProperties.PREFIX, name = {"http.enable", "http.instant-enable"}, havingValue = "true")
+    public OssInstantController ossInstantController(OssTemplate template) {
+        return new OssInstantController(template);
     }
 
+    /**
+     * 存在 Micrometer 时记录指标
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(MeterRegistry.class)
+    static class OssMetricsConfiguration {
 
+        /**
+         * 指标记录
+         * @param registry 指标注册中心
+         * @return Micrometer 指标记录
+         */
+        @Bean
+        @ConditionalOnBean(MeterRegistry.class)
+        @ConditionalOnMissingBean(OssMetrics.class)
+        @ConditionalOnProperty(prefix = OssProperties.PREFIX, name = "metrics.enable", havingValue = "true", matchIfMissing = true)
+        public OssMetrics ossMetrics(MeterRegistry registry) {
+            return new MicrometerOssMetrics(registry);
+        }
+
+    }
 
 }
@@ -2,8 +2,10 @@ package com.wiblog.oss.controller;
 
 import com.wiblog.oss.bean.ObjectInfo;
 import com.wiblog.oss.bean.ObjectTreeNode;
+import com.wiblog.oss.bean.OssProperties;
 import com.wiblog.oss.bean.chunk.Chunk;
 import com.wiblog.oss.bean.chunk.ChunkMerge;
+import com.wiblog.oss.bean.chunk.ChunkProcess;
 import com.wiblog.oss.bean.chunk.ChunkTarget;
 import com.wiblog.oss.bean.chunk.ChunkTask;
 import com.wiblog.oss.resp.R;
@@ -47,6 +49,11 @@ public class OssController {
      */
     private final OssTemplate ossTemplate;
 
+    /**
+     * OSS配置
+     */
+    private final OssProperties ossProperties;
+
     private final AntPathMatcher antPathMatcher = new AntPathMatcher();
 
     /**
@@ -72,10 +79,27 @@ public class OssController {
     @ApiOperation(value = "分片上传大文件")
     public R<ChunkTarget> chunk(@Validated Chunk chunk) {
         ChunkTarget chunkTarget = ossTemplate.put().chunk(chunk);
-        // 记录分片上传成功状态 path+chunkNumber
         return R.data(chunkTarget);
     }
 
+    /**
+     * 查询分片上传进度
+     *
+     * @param uploadId    上传任务id
+     * @param totalChunks 分片总数
+     * @return 缺失的分片号，任务不存在时为null
+     */
+    @GetMapping(value = "/chunk/missing")
+    @ApiOperation(value = "查询缺失的分片")
+    @ApiImplicitParams({
+            @ApiImplicitParam(name = "uploadId", value = "上传任务id", required = true, dataType = "String", paramType = "query", dataTypeClass = String.class),
+            @ApiImplicitParam(name = "totalChunks", value = "分片总数", required = true, dataType = "int", paramType = "query", dataTypeClass = Integer.class)
+    })
+    public R<List<Integer>> missingChunks(@NotBlank String uploadId, @NotNull Integer totalChunks) {
+        ChunkProcess process = ossTemplate.put().getChunkProcess(uploadId);
+        return R.data(process == null ? null : process.missingChunks(totalChunks));
+    }
+
     /**
      * 文件合并
      *
@@ -86,7 +110,6 @@ public class OssController {
     @ApiOperation(value = "文件合并")
     public R<ObjectInfo> merge(@Validated ChunkMerge chunkMerge) {
         ObjectInfo merge = ossTemplate.put().merge(chunkMerge);
-        // 删除分片上传状态
         // 数据库记录文件唯一标识(path)代表上传成功
         return R.data(merge);
     }
@@ -125,16 +148,30 @@ public class OssController {
     }
 
     /**
-     * 获取文件目录
+     * 获取文件目录，传入 depth 时按层级懒加载
      *
      * @param objectName 文件路径
+     * @param depth      展开层数，为空时返回完整目录树，不能超过 treeMaxDepth
+     * @param pageSize   每个文件夹的子节点数量
+     * @param token      objectName 的页令牌
      * @return 响应
      */
     @GetMapping("/object/tree")
     @ApiOperation(value = "获取文件目录树")
-    @ApiImplicitParam(name = "objectName", value = "文件目录", required = true, dataType = "String", paramType = "form", dataTypeClass = String.class)
-    public R<ObjectTreeNode> getObjectTree(@NotBlank String objectName) {
-        ObjectTreeNode tree = ossTemplate.query().getTreeList(objectName);
+    @ApiImplicitParams({
+            @ApiImplicitParam(name = "objectName", value = "文件目录", required = true, dataType = "String", paramType = "form", dataTypeClass = String.class),
+            @ApiImplicitParam(name = "depth", value = "展开层数，为空时返回完整目录树，不能超过 oss.tree-max-depth", dataType = "int", paramType = "form", dataTypeClass = Integer.class),
+            @ApiImplicitParam(name = "pageSize", value = "每个文件夹的子节点数量，默认100", dataType = "int", paramType = "form", dataTypeClass = Integer.class),
+            @ApiImplicitParam(name = "token", value = "下一页令牌", dataType = "String", paramType = "form", dataTypeClass = String.class)
+    })
+    public R<ObjectTreeNode> getObjectTree(@NotBlank String objectName, Integer depth,
+                                           @RequestParam(defaultValue = "100") int pageSize, String token) {
+        if (depth != null && (depth < 1 || depth > ossProperties.getTreeMaxDepth())) {
+            return R.fail("展开层数需在1~" + ossProperties.getTreeMaxDepth() + "之间");
+        }
+        ObjectTreeNode tree = depth == null
+                ? ossTemplate.query().getTreeList(objectName)
+                : ossTemplate.query().getTreeList(objectName, depth, pageSize, token);
         return R.data(tree);
     }
 
@@ -170,7 +207,7 @@ public class OssController {
                                       String filename) throws IOException {
         InputStream inputStream = file.getInputStream();
         filename = Util.isBlank(filename) ? file.getOriginalFilename() : filename;
-        ObjectInfo objectInfo = ossTemplate.put().putObject(path, filename, inputStream);
+        ObjectInfo objectInfo = ossTemplate.put().putObject(path, filename, inputStream, file.getSize());
         return R.data(objectInfo);
     }
 
@@ -0,0 +1,46 @@
+package com.wiblog.oss.controller;
+
+import com.wiblog.oss.bean.ObjectInfo;
+import com.wiblog.oss.bean.chunk.ChunkTask;
+import com.wiblog.oss.resp.R;
+import com.wiblog.oss.service.OssTemplate;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.RequiredArgsConstructor;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 秒传端点，可凭hash拷贝桶内已有对象，需单独开启
+ *
+ * @author panwm
+ * @since 2024/9/22 16:10
+ */
+@Validated
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("${oss.http.prefix:}/oss")
+@Api(tags = "oss:http接口")
+public class OssInstantController {
+
+    /**
+     * OSS操作模板
+     */
+    private final OssTemplate ossTemplate;
+
+    /**
+     * 秒传，已存在相同内容的文件时无需上传
+     *
+     * @param chunkTask 分片任务，hash为文件MD5
+     * @return 对象信息，为null时需要上传
+     */
+    @PostMapping(value = "/instant")
+    @ApiOperation(value = "秒传")
+    public R<ObjectInfo> instant(@Validated ChunkTask chunkTask) {
+        ObjectInfo objectInfo = ossTemplate.put().instantUpload(chunkTask);
+        return R.data(objectInfo);
+    }
+
+}
@@ -0,0 +1,144 @@
+package com.wiblog.oss.metrics;
+
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.services.s3.DelegatingS3AsyncClient;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Request;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 记录指标的 S3 客户端
+ * <p>
+ * 所有请求经过 invokeOperation 统计耗时、进行中的请求数和失败原因；
+ * 上传按请求体长度统计字节数，下载在数据读完时按实际字节数统计，因此流式下载的吞吐量包含读取方的耗时。
+ * 返回的 future 即原始 future，取消操作照常传递
+ *
+ * @author panwm
+ * @since 2024/10/2 21:10
+ */
+public class MeteredS3AsyncClient extends DelegatingS3AsyncClient {
+
+    private static final String NO_BUCKET = "none";
+
+    private final OssMetrics metrics;
+
+    public MeteredS3AsyncClient(S3AsyncClient delegate, OssMetrics metrics) {
+        super(delegate);
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected <T extends S3Request, ReturnT> CompletableFuture<ReturnT> invokeOperation(T request, Function<T, CompletableFuture<ReturnT>> operation) {
+        String name = operationName(request);
+        String bucketName = bucketName(request);
+        long startTime = System.nanoTime();
+        metrics.requestStarted(name, bucketName);
+        CompletableFuture<ReturnT> future;
+        try {
+            future = operation.apply(request);
+        } catch (RuntimeException e) {
+            metrics.requestCompleted(name, bucketName, System.nanoTime() - startTime, e);
+            throw e;
+        }
+        future.whenComplete((r, e) -> metrics.requestCompleted(name, bucketName, System.nanoTime() - startTime, e));
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<PutObjectResponse> putObject(PutObjectRequest request, AsyncRequestBody body) {
+        long startTime = System.nanoTime();
+        CompletableFuture<PutObjectResponse> future = super.putObject(request, body);
+        future.whenComplete((r, e) -> {
+            if (e == null) {
+                metrics.bytesSent("PutObject", bucketName(request), contentLength(request.contentLength(), body), System.nanoTime() - startTime);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<UploadPartResponse> uploadPart(UploadPartRequest request, AsyncRequestBody body) {
+        long startTime = System.nanoTime();
+        CompletableFuture<UploadPartResponse> future = super.uploadPart(request, body);
+        future.whenComplete((r, e) -> {
+            if (e == null) {
+                metrics.bytesSent("UploadPart", bucketName(request), contentLength(request.contentLength(), body), System.nanoTime() - startTime);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public <ReturnT> CompletableFuture<ReturnT> getObject(GetObjectRequest request, AsyncResponseTransformer<GetObjectResponse, ReturnT> transformer) {
+        return super.getObject(request, new MeteredResponseTransformer<>(transformer, bucketName(request)));
+    }
+
+    private long contentLength(Long contentLength, AsyncRequestBody body) {
+        return contentLength != null ? contentLength : body.contentLength().orElse(0L);
+    }
+
+    private String operationName(S3Request request) {
+        String name = request.getClass().getSimpleName();
+        return name.endsWith("Request") ? name.substring(0, name.length() - "Request".length()) : name;
+    }
+
+    private String bucketName(S3Request request) {
+        return request.getValueForField("Bucket", String.class)
+                .orElseGet(() -> request.getValueForField("DestinationBucket", String.class).orElse(NO_BUCKET));
+    }
+
+    /**
+     * 统计实际读取字节数的响应转换器
+     */
+    private class MeteredResponseTransformer<ReturnT> implements AsyncResponseTransformer<GetObjectResponse, ReturnT> {
+
+        private final AsyncResponseTransformer<GetObjectResponse, ReturnT> delegate;
+
+        private final String bucketName;
+
+        private final long startTime = System.nanoTime();
+
+        MeteredResponseTransformer(AsyncResponseTransformer<GetObjectResponse, ReturnT> delegate, String bucketName) {
+            this.delegate = delegate;
+            this.bucketName = bucketName;
+        }
+
+        @Override
+        public CompletableFuture<ReturnT> prepare() {
+            return delegate.prepare();
+        }
+
+        @Override
+        public void onResponse(GetObjectResponse response) {
+            delegate.onResponse(response);
+        }
+
+        @Override
+        public void onStream(SdkPublisher<ByteBuffer> publisher) {
+            AtomicLong bytes = new AtomicLong();
+            delegate.onStream(publisher
+                    .map(buffer -> {
+                        bytes.addAndGet(buffer.remaining());
+                        return buffer;
+                    })
+                    .doAfterOnComplete(() -> metrics.bytesReceived("GetObject", bucketName, bytes.get(), System.nanoTime() - startTime)));
+        }
+
+        @Override
+        public void exceptionOccurred(Throwable error) {
+            delegate.exceptionOccurred(error);
+        }
+    }
+}
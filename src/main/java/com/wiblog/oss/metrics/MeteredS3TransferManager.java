@@ -0,0 +1,159 @@
+package com.wiblog.oss.metrics;
+
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+import software.amazon.awssdk.transfer.s3.model.Copy;
+import software.amazon.awssdk.transfer.s3.model.CopyRequest;
+import software.amazon.awssdk.transfer.s3.model.DirectoryDownload;
+import software.amazon.awssdk.transfer.s3.model.DirectoryUpload;
+import software.amazon.awssdk.transfer.s3.model.Download;
+import software.amazon.awssdk.transfer.s3.model.DownloadDirectoryRequest;
+import software.amazon.awssdk.transfer.s3.model.DownloadFileRequest;
+import software.amazon.awssdk.transfer.s3.model.DownloadRequest;
+import software.amazon.awssdk.transfer.s3.model.FileDownload;
+import software.amazon.awssdk.transfer.s3.model.FileUpload;
+import software.amazon.awssdk.transfer.s3.model.ResumableFileDownload;
+import software.amazon.awssdk.transfer.s3.model.ResumableFileUpload;
+import software.amazon.awssdk.transfer.s3.model.Upload;
+import software.amazon.awssdk.transfer.s3.model.UploadDirectoryRequest;
+import software.amazon.awssdk.transfer.s3.model.UploadFileRequest;
+import software.amazon.awssdk.transfer.s3.model.UploadRequest;
+import software.amazon.awssdk.transfer.s3.progress.TransferListener;
+
+/**
+ * 记录指标的传输管理器
+ * <p>
+ * 传输管理器必须直接使用 CRT 客户端，其内部的 S3 请求不经过 {@link MeteredS3AsyncClient}；
+ * 这里为每次传输附加 {@link TransferListener}，以传输为单位记录耗时、失败原因和字节数，
+ * 文件夹传输按其中的每个文件分别记录。操作名为 UploadFile、Upload、DownloadFile、Download、Copy
+ *
+ * @author panwm
+ * @since 2024/10/3 15:20
+ */
+public class MeteredS3TransferManager implements S3TransferManager {
+
+    private final S3TransferManager delegate;
+
+    private final OssMetrics metrics;
+
+    public MeteredS3TransferManager(S3TransferManager delegate, OssMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public FileUpload uploadFile(UploadFileRequest request) {
+        return delegate.uploadFile(request.toBuilder()
+                .addTransferListener(listener("UploadFile", request.putObjectRequest().bucket(), true))
+                .build());
+    }
+
+    @Override
+    public Upload upload(UploadRequest request) {
+        return delegate.upload(request.toBuilder()
+                .addTransferListener(listener("Upload", request.putObjectRequest().bucket(), true))
+                .build());
+    }
+
+    @Override
+    public DirectoryUpload uploadDirectory(UploadDirectoryRequest request) {
+        return delegate.uploadDirectory(request.toBuilder()
+                .uploadFileRequestTransformer(b -> {
+                    request.uploadFileRequestTransformer().accept(b);
+                    b.addTransferListener(listener("UploadFile", request.bucket(), true));
+                })
+                .build());
+    }
+
+    @Override
+    public FileDownload downloadFile(DownloadFileRequest request) {
+        return delegate.downloadFile(request.toBuilder()
+                .addTransferListener(listener("DownloadFile", request.getObjectRequest().bucket(), false))
+                .build());
+    }
+
+    @Override
+    public <ResultT> Download<ResultT> download(DownloadRequest<ResultT> request) {
+        return delegate.download(request.toBuilder()
+                .addTransferListener(listener("Download", request.getObjectRequest().bucket(), false))
+                .build());
+    }
+
+    @Override
+    public DirectoryDownload downloadDirectory(DownloadDirectoryRequest request) {
+        return delegate.downloadDirectory(request.toBuilder()
+                .downloadFileRequestTransformer(b -> {
+                    request.downloadFileRequestTransformer().accept(b);
+                    b.addTransferListener(listener("DownloadFile", request.bucket(), false));
+                })
+                .build());
+    }
+
+    @Override
+    public Copy copy(CopyRequest request) {
+        return delegate.copy(request.toBuilder()
+                .addTransferListener(listener("Copy", request.copyObjectRequest().destinationBucket(), false))
+                .build());
+    }
+
+    @Override
+    public FileDownload resumeDownloadFile(ResumableFileDownload resumableFileDownload) {
+        return delegate.resumeDownloadFile(resumableFileDownload);
+    }
+
+    @Override
+    public FileUpload resumeUploadFile(ResumableFileUpload resumableFileUpload) {
+        return delegate.resumeUploadFile(resumableFileUpload);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    private TransferListener listener(String operation, String bucketName, boolean upload) {
+        return new MetricsListener(operation, bucketName, upload);
+    }
+
+    /**
+     * 单次传输的指标回调，拷贝只记录耗时
+     */
+    private class MetricsListener implements TransferListener {
+
+        private final String operation;
+
+        private final String bucketName;
+
+        private final boolean upload;
+
+        private volatile long startTime;
+
+        MetricsListener(String operation, String bucketName, boolean upload) {
+            this.operation = operation;
+            this.bucketName = bucketName;
+            this.upload = upload;
+        }
+
+        @Override
+        public void transferInitiated(Context.TransferInitiated context) {
+            startTime = System.nanoTime();
+            metrics.requestStarted(operation, bucketName);
+        }
+
+        @Override
+        public void transferComplete(Context.TransferComplete context) {
+            long duration = System.nanoTime() - startTime;
+            metrics.requestCompleted(operation, bucketName, duration, null);
+            long bytes = context.progressSnapshot().transferredBytes();
+            if (upload) {
+                metrics.bytesSent(operation, bucketName, bytes, duration);
+            } else if (!"Copy".equals(operation)) {
+                metrics.bytesReceived(operation, bucketName, bytes, duration);
+            }
+        }
+
+        @Override
+        public void transferFailed(Context.TransferFailed context) {
+            metrics.requestCompleted(operation, bucketName, System.nanoTime() - startTime, context.exception());
+        }
+    }
+}
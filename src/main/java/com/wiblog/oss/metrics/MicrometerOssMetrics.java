@@ -0,0 +1,129 @@
+package com.wiblog.oss.metrics;
+
+import com.wiblog.oss.util.BufferPool;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于 Micrometer 的指标实现
+ * <ul>
+ *     <li>oss.requests：按操作、存储桶、结果统计的请求耗时</li>
+ *     <li>oss.requests.active：进行中的请求数</li>
+ *     <li>oss.errors：按操作、存储桶、S3 错误码统计的失败次数</li>
+ *     <li>oss.bytes.sent / oss.bytes.received：上传、下载字节数</li>
+ *     <li>oss.upload.throughput / oss.download.throughput：单个请求的吞吐量分布（字节/秒）</li>
+ *     <li>oss.buffer.pool.*：分片缓冲区池的占用与命中情况</li>
+ * </ul>
+ *
+ * @author panwm
+ * @since 2024/10/2 20:30
+ */
+public class MicrometerOssMetrics implements OssMetrics {
+
+    private final MeterRegistry registry;
+
+    private final AtomicInteger activeRequests;
+
+    public MicrometerOssMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.activeRequests = registry.gauge("oss.requests.active", new AtomicInteger());
+    }
+
+    @Override
+    public void requestStarted(String operation, String bucketName) {
+        activeRequests.incrementAndGet();
+    }
+
+    @Override
+    public void requestCompleted(String operation, String bucketName, long durationNanos, Throwable error) {
+        activeRequests.decrementAndGet();
+        Timer.builder("oss.requests")
+                .description("S3 请求耗时")
+                .tag("operation", operation)
+                .tag("bucket", bucketName)
+                .tag("outcome", error == null ? "success" : "error")
+                .register(registry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+        if (error != null) {
+            Counter.builder("oss.errors")
+                    .description("S3 请求失败次数")
+                    .tag("operation", operation)
+                    .tag("bucket", bucketName)
+                    .tag("code", errorCode(error))
+                    .register(registry)
+                    .increment();
+        }
+    }
+
+    @Override
+    public void bytesSent(String operation, String bucketName, long bytes, long durationNanos) {
+        record("oss.bytes.sent", "oss.upload.throughput", operation, bucketName, bytes, durationNanos);
+    }
+
+    @Override
+    public void bytesReceived(String operation, String bucketName, long bytes, long durationNanos) {
+        record("oss.bytes.received", "oss.download.throughput", operation, bucketName, bytes, durationNanos);
+    }
+
+    private void record(String bytesName, String throughputName, String operation, String bucketName, long bytes, long durationNanos) {
+        if (bytes <= 0) {
+            return;
+        }
+        Counter.builder(bytesName)
+                .baseUnit("bytes")
+                .tag("operation", operation)
+                .tag("bucket", bucketName)
+                .register(registry)
+                .increment(bytes);
+        if (durationNanos > 0) {
+            DistributionSummary.builder(throughputName)
+                    .baseUnit("bytes/s")
+                    .tag("bucket", bucketName)
+                    .publishPercentileHistogram()
+                    .register(registry)
+                    .record(bytes * 1e9 / durationNanos);
+        }
+    }
+
+    @Override
+    public void bindBufferPool(BufferPool bufferPool) {
+        Gauge.builder("oss.buffer.pool.allocated", bufferPool, BufferPool::getAllocatedBytes)
+                .description("缓冲区池已占用的堆外内存")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("oss.buffer.pool.available", bufferPool, BufferPool::getAvailable)
+                .description("空闲缓冲区数")
+                .register(registry);
+        FunctionCounter.builder("oss.buffer.pool.hits", bufferPool, BufferPool::getHits)
+                .description("复用已有缓冲区的次数")
+                .register(registry);
+        FunctionCounter.builder("oss.buffer.pool.misses", bufferPool, BufferPool::getMisses)
+                .description("新建缓冲区的次数")
+                .register(registry);
+    }
+
+    private String errorCode(Throwable error) {
+        Throwable e = error;
+        if (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        if (e instanceof AwsServiceException) {
+            AwsServiceException serviceException = (AwsServiceException) e;
+            if (serviceException.awsErrorDetails() != null && serviceException.awsErrorDetails().errorCode() != null) {
+                return serviceException.awsErrorDetails().errorCode();
+            }
+            // HEAD 请求的错误响应没有响应体，只能使用状态码
+            return String.valueOf(serviceException.statusCode());
+        }
+        return e.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,60 @@
+package com.wiblog.oss.metrics;
+
+import com.wiblog.oss.util.BufferPool;
+
+/**
+ * OSS 指标记录
+ * <p>
+ * 由 {@link MeteredS3AsyncClient} 在每个 S3 请求前后回调，由 {@link MeteredS3TransferManager} 在每次传输前后回调，
+ * 可注册自定义实现的 Bean 替换默认的 Micrometer 实现
+ *
+ * @author panwm
+ * @since 2024/10/2 20:05
+ */
+public interface OssMetrics {
+
+    /**
+     * 请求开始
+     *
+     * @param operation  S3 操作名，如 GetObject
+     * @param bucketName 存储桶
+     */
+    void requestStarted(String operation, String bucketName);
+
+    /**
+     * 请求结束
+     *
+     * @param operation     S3 操作名
+     * @param bucketName    存储桶
+     * @param durationNanos 耗时（纳秒）
+     * @param error         失败原因，成功时为null
+     */
+    void requestCompleted(String operation, String bucketName, long durationNanos, Throwable error);
+
+    /**
+     * 上传完成
+     *
+     * @param operation     S3 操作名
+     * @param bucketName    存储桶
+     * @param bytes         上传字节数
+     * @param durationNanos 耗时（纳秒）
+     */
+    void bytesSent(String operation, String bucketName, long bytes, long durationNanos);
+
+    /**
+     * 下载完成
+     *
+     * @param operation     S3 操作名
+     * @param bucketName    存储桶
+     * @param bytes         下载字节数
+     * @param durationNanos 从发起请求到读完数据的耗时（纳秒）
+     */
+    void bytesReceived(String operation, String bucketName, long bytes, long durationNanos);
+
+    /**
+     * 注册缓冲区池的使用情况
+     *
+     * @param bufferPool 分片缓冲区池
+     */
+    void bindBufferPool(BufferPool bufferPool);
+}
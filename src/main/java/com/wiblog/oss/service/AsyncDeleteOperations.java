@@ -0,0 +1,115 @@
+package com.wiblog.oss.service;
+
+import com.wiblog.oss.bean.BatchResult;
+import com.wiblog.oss.bean.OssProperties;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.*;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * 异步移除操作类
+ * <p>
+ * 所有方法立即返回，不阻塞调用线程；请求失败时 future 以异常结束
+ *
+ * @author panwm
+ * @since 2024/9/20 21:30
+ */
+@Slf4j
+public class AsyncDeleteOperations extends Operations {
+
+    public AsyncDeleteOperations(OssProperties ossProperties, S3AsyncClient client, S3TransferManager transferManager) {
+        this(ossProperties, client, transferManager, new OssDependencies());
+    }
+
+    public AsyncDeleteOperations(OssProperties ossProperties, S3AsyncClient client, S3TransferManager transferManager, OssDependencies dependencies) {
+        super(ossProperties, client, transferManager, dependencies);
+    }
+
+    /**
+     * 删除文件
+     *
+     * @param objectName 文件全路径
+     * @return 完成信号
+     */
+    public CompletableFuture<Void> removeObject(String objectName) {
+        return removeObject(ossProperties.getBucketName(), objectName);
+    }
+
+    /**
+     * 删除文件
+     *
+     * @param bucketName bucket名称
+     * @param objectName 文件全路径
+     * @return 完成信号
+     */
+    public CompletableFuture<Void> removeObject(String bucketName, String objectName) {
+        String key = formatPath(objectName);
+        return client.deleteObject(x -> x.bucket(bucketName).key(key))
+                .thenRun(() -> objectRemoved(bucketName, key));
+    }
+
+    /**
+     * 删除文件夹
+     *
+     * @param path 文件夹
+     * @return 删除结果
+     */
+    public CompletableFuture<BatchResult> removeFolder(String path) {
+        return removeFolder(ossProperties.getBucketName(), path);
+    }
+
+    /**
+     * 删除文件夹，逐页列举并批量删除
+     *
+     * @param bucketName bucket名称
+     * @param path       文件夹
+     * @return 删除结果，包含删除失败的文件；路径为存储桶根目录时以 IllegalArgumentException 结束
+     */
+    public CompletableFuture<BatchResult> removeFolder(String bucketName, String path) {
+        String prefix = formatPath(path);
+        if (prefix.isEmpty()) {
+            CompletableFuture<BatchResult> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalArgumentException("不允许删除存储桶根目录"));
+            return future;
+        }
+        long startTime = System.currentTimeMillis();
+        return removePage(bucketName, prefix, null, new BatchResult())
+                .thenApply(result -> result.setCostTime(System.currentTimeMillis() - startTime))
+                .whenComplete((r, e) -> prefixChanged(bucketName, prefix));
+    }
+
+    /**
+     * 依次删除各页，失败的对象记录到结果中，不中断后续页
+     */
+    private CompletableFuture<BatchResult> removePage(String bucketName, String prefix, String token, BatchResult result) {
+        return client.listObjectsV2(b -> b.bucket(bucketName).prefix(prefix).maxKeys(MAX_BATCH_SIZE).continuationToken(token))
+                .thenCompose(response -> {
+                    List<ObjectIdentifier> toDelete = response.contents().stream()
+                            .map(e -> ObjectIdentifier.builder().key(e.key()).build())
+                            .collect(Collectors.toList());
+                    if (toDelete.isEmpty()) {
+                        return CompletableFuture.completedFuture(result);
+                    }
+                    return client.deleteObjects(b -> b.bucket(bucketName).delete(d -> d.objects(toDelete).quiet(true)))
+                            .handle((r, e) -> {
+                                if (e != null) {
+                                    log.error("批量删除失败，共 {} 个", toDelete.size(), e);
+                                    String message = String.valueOf((e.getCause() != null ? e.getCause() : e).getMessage());
+                                    toDelete.forEach(o -> result.getFailed().put(o.key(), message));
+                                } else {
+                                    r.errors().forEach(error -> result.getFailed().put(error.key(), error.code() + ": " + error.message()));
+                                    result.setSuccessCount(result.getSuccessCount() + toDelete.size() - r.errors().size());
+                                }
+                                return result;
+                            })
+                            .thenCompose(r -> Boolean.TRUE.equals(response.isTruncated())
+                                    ? removePage(bucketName, prefix, response.nextContinuationToken(), r)
+                                    : CompletableFuture.completedFuture(r));
+                });
+    }
+}
@@ -0,0 +1,37 @@
+package com.wiblog.oss.service;
+
+/**
+ * 异步操作入口，与 OssTemplate 共用同一客户端
+ * <p>
+ * 方法均返回 CompletableFuture，适用于 WebFlux 等非阻塞场景，可通过 Mono.fromFuture 转换
+ *
+ * @author panwm
+ * @since 2024/9/20 21:30
+ */
+public class AsyncOssTemplate {
+
+    private final AsyncPutOperations putOperations;
+
+    private final AsyncQueryOperations queryOperations;
+
+    private final AsyncDeleteOperations deleteOperations;
+
+    public AsyncOssTemplate(AsyncPutOperations putOperations, AsyncQueryOperations queryOperations, AsyncDeleteOperations deleteOperations) {
+        this.putOperations = putOperations;
+        this.queryOperations = queryOperations;
+        this.deleteOperations = deleteOperations;
+    }
+
+    public AsyncPutOperations put() {
+        return this.putOperations;
+    }
+
+    public AsyncQueryOperations query() {
+        return this.queryOperations;
+    }
+
+    public AsyncDeleteOperations delete() {
+        return this.deleteOperations;
+    }
+
+}
@@ -0,0 +1,233 @@
+package com.wiblog.oss.service;
+
+import com.wiblog.oss.bean.ObjectInfo;
+import com.wiblog.oss.bean.OssProperties;
+import com.wiblog.oss.util.Util;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+import software.amazon.awssdk.transfer.s3.model.UploadDirectoryRequest;
+import software.amazon.awssdk.transfer.s3.model.UploadFileRequest;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 异步上传操作类
+ * <p>
+ * 所有方法立即返回，不阻塞调用线程；请求失败时 future 以异常结束
+ * <p>
+ * InputStream 需阻塞读取，未提供对应重载，可通过 AsyncRequestBody.fromInputStream 指定线程池后上传；
+ * 分片上传、秒传及文件夹拷贝、移动未提供异步版本
+ *
+ * @author panwm
+ * @since 2024/9/20 21:30
+ */
+@Slf4j
+public class AsyncPutOperations extends Operations {
+
+    public AsyncPutOperations(OssProperties ossProperties, S3AsyncClient client, S3TransferManager transferManager) {
+        this(ossProperties, client, transferManager, new OssDependencies());
+    }
+
+    public AsyncPutOperations(OssProperties ossProperties, S3AsyncClient client, S3TransferManager transferManager, OssDependencies dependencies) {
+        super(ossProperties, client, transferManager, dependencies);
+    }
+
+    /**
+     * 上传文件
+     *
+     * @param path     存放路径
+     * @param filename 文件名
+     * @param file     文件
+     * @return 对象信息
+     */
+    public CompletableFuture<ObjectInfo> putObject(String path, String filename, File file) {
+        return putObject(ossProperties.getBucketName(), path, filename, file);
+    }
+
+    /**
+     * 上传文件
+     *
+     * @param bucketName 存储桶
+     * @param path       存放路径
+     * @param filename   文件名
+     * @param file       文件
+     * @return 对象信息
+     */
+    public CompletableFuture<ObjectInfo> putObject(String bucketName, String path, String filename, File file) {
+        return putObjectForKey(bucketName, formatPath(path) + filename, file);
+    }
+
+    /**
+     * 上传字节数组
+     *
+     * @param bucketName 存储桶
+     * @param path       存放路径
+     * @param filename   文件名
+     * @param bytes      文件内容
+     * @return 对象信息
+     */
+    public CompletableFuture<ObjectInfo> putObject(String bucketName, String path, String filename, byte[] bytes) {
+        return putObjectForKey(bucketName, formatPath(path) + filename, bytes);
+    }
+
+    /**
+     * 上传文件
+     *
+     * @param objectName 文件全路径
+     * @param file       文件
+     * @return 对象信息
+     */
+    public CompletableFuture<ObjectInfo> putObjectForKey(String objectName, File file) {
+        return putObjectForKey(ossProperties.getBucketName(), objectName, file);
+    }
+
+    /**
+     * 上传文件
+     *
+     * @param bucketName 存储桶
+     * @param objectName 文件全路径
+     * @param file       文件
+     * @return 对象信息
+     */
+    public CompletableFuture<ObjectInfo> putObjectForKey(String bucketName, String objectName, File file) {
+        String key = formatPath(objectName);
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder().bucket(bucketName)
+                .key(key)
+                .contentType(Util.getContentType(key))
+                .build();
+        UploadFileRequest uploadFileRequest = UploadFileRequest.builder().putObjectRequest(putObjectRequest)
+                .source(file).build();
+        return transferManager.uploadFile(uploadFileRequest).completionFuture()
+                .thenApply(r -> {
+                    objectPut(bucketName, key, file.length());
+                    return buildObjectInfo(key, new Date(), file.length());
+                });
+    }
+
+    /**
+     * 上传字节数组
+     *
+     * @param objectName 文件全路径
+     * @param bytes      文件内容
+     * @return 对象信息
+     */
+    public CompletableFuture<ObjectInfo> putObjectForKey(String objectName, byte[] bytes) {
+        return putObjectForKey(ossProperties.getBucketName(), objectName, bytes);
+    }
+
+    /**
+     * 上传字节数组
+     *
+     * @param bucketName 存储桶
+     * @param objectName 文件全路径
+     * @param bytes      文件内容
+     * @return 对象信息
+     */
+    public CompletableFuture<ObjectInfo> putObjectForKey(String bucketName, String objectName, byte[] bytes) {
+        return putObjectForKey(bucketName, objectName, AsyncRequestBody.fromBytes(bytes));
+    }
+
+    /**
+     * 上传异步请求体，请求体需提供内容长度
+     *
+     * @param bucketName 存储桶
+     * @param objectName 文件全路径
+     * @param body       请求体
+     * @return 对象信息
+     */
+    public CompletableFuture<ObjectInfo> putObjectForKey(String bucketName, String objectName, AsyncRequestBody body) {
+        String key = formatPath(objectName);
+        long size = body.contentLength().orElse(0L);
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder().bucket(bucketName)
+                .key(key)
+                .contentType(Util.getContentType(key))
+                .build();
+        return client.putObject(putObjectRequest, body)
+                .thenApply(r -> {
+                    objectPut(bucketName, key, size);
+                    return buildObjectInfo(key, new Date(), size);
+                });
+    }
+
+    /**
+     * 创建文件夹
+     *
+     * @param path 路径
+     * @return ObjectInfo
+     */
+    public CompletableFuture<ObjectInfo> mkdirs(String path) {
+        return mkdirs(ossProperties.getBucketName(), path);
+    }
+
+    /**
+     * 创建文件夹
+     *
+     * @param bucketName 桶名称
+     * @param path       路径
+     * @return ObjectInfo
+     */
+    public CompletableFuture<ObjectInfo> mkdirs(String bucketName, String path) {
+        String key = formatPath(path);
+        return client.putObject(b -> b.bucket(bucketName).key(key), AsyncRequestBody.empty())
+                .thenApply(r -> {
+                    objectPut(bucketName, key, 0);
+                    return buildObjectInfo(path, new Date(), 0);
+                });
+    }
+
+    /**
+     * 上传文件夹
+     *
+     * @param bucketName          存储桶
+     * @param path                存放路径
+     * @param folder              文件夹
+     * @param isIncludeFolderName 存放路径是否包含文件夹名称
+     * @return 上传失败的文件数；文件夹不存在时以 IllegalArgumentException 结束
+     */
+    public CompletableFuture<Integer> putFolder(String bucketName, String path, File folder, boolean isIncludeFolderName) {
+        if (!folder.exists() || !folder.isDirectory()) {
+            CompletableFuture<Integer> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalArgumentException("目录不存在: " + folder.getPath()));
+            return future;
+        }
+        String prefix = formatPath(path) + (isIncludeFolderName ? folder.getName() + "/" : "");
+        UploadDirectoryRequest uploadDirectoryRequest = UploadDirectoryRequest.builder()
+                .source(Paths.get(folder.getAbsolutePath()))
+                .s3Prefix(prefix)
+                .bucket(bucketName)
+                .build();
+        return transferManager.uploadDirectory(uploadDirectoryRequest).completionFuture()
+                .thenApply(r -> {
+                    prefixChanged(bucketName, prefix);
+                    r.failedTransfers().forEach(e -> log.error("上传文件失败: {}", e.request().source(), e.exception()));
+                    return r.failedTransfers().size();
+                });
+    }
+
+    /**
+     * 拷贝文件
+     *
+     * @param sourceBucketName        源BucketName
+     * @param destinationBucketName   目标BucketName
+     * @param sourceDirectoryKey      源路径
+     * @param destinationDirectoryKey 目标路径
+     * @return 完成信号
+     */
+    public CompletableFuture<Void> copyFile(String sourceBucketName, String destinationBucketName, String sourceDirectoryKey, String destinationDirectoryKey) {
+        CopyObjectRequest copyReq = CopyObjectRequest.builder()
+                .sourceBucket(sourceBucketName)
+                .sourceKey(formatPath(sourceDirectoryKey))
+                .destinationBucket(destinationBucketName)
+                .destinationKey(formatPath(destinationDirectoryKey))
+                .build();
+        return client.copyObject(copyReq)
+                .thenRun(() -> objectChanged(destinationBucketName, copyReq.destinationKey()));
+    }
+}
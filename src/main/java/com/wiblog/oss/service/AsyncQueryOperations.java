@@ -0,0 +1,359 @@
+package com.wiblog.oss.service;
+
+import com.wiblog.oss.bean.BatchResult;
+import com.wiblog.oss.bean.ObjectInfo;
+import com.wiblog.oss.bean.ObjectPage;
+import com.wiblog.oss.bean.ObjectTreeNode;
+import com.wiblog.oss.bean.OssProperties;
+import com.wiblog.oss.util.Util;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.*;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+import software.amazon.awssdk.transfer.s3.model.DownloadDirectoryRequest;
+import software.amazon.awssdk.transfer.s3.model.FailedFileDownload;
+import software.amazon.awssdk.transfer.s3.progress.TransferListener;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 异步查询操作类
+ * <p>
+ * 所有方法立即返回，不阻塞调用线程；请求失败时 future 以异常结束，对象不存在时返回null
+ * <p>
+ * 目录树查询（getTreeList、getTreeListByName）及预览未提供异步版本，需要时使用 listNextLevel 分页逐层获取
+ *
+ * @author panwm
+ * @since 2024/9/20 21:30
+ */
+@Slf4j
+public class AsyncQueryOperations extends Operations {
+
+    public AsyncQueryOperations(OssProperties ossProperties, S3AsyncClient client, S3TransferManager transferManager) {
+        this(ossProperties, client, transferManager, new OssDependencies());
+    }
+
+    public AsyncQueryOperations(OssProperties ossProperties, S3AsyncClient client, S3TransferManager transferManager, OssDependencies dependencies) {
+        super(ossProperties, client, transferManager, dependencies);
+    }
+
+    /**
+     * 获取全部bucket
+     *
+     * @return Bucket列表
+     */
+    public CompletableFuture<List<Bucket>> getAllBuckets() {
+        return client.listBuckets().thenApply(ListBucketsResponse::buckets);
+    }
+
+    /**
+     * 判断桶是否存在
+     *
+     * @param bucketName 桶名称
+     * @return 是否存在
+     */
+    public CompletableFuture<Boolean> testConnectForBucket(String bucketName) {
+        return client.headBucket(b -> b.bucket(bucketName)).handle((r, e) -> e == null);
+    }
+
+    /**
+     * 校验文件是否存在
+     *
+     * @param objectName 文件全路径
+     * @return 是否存在
+     */
+    public CompletableFuture<Boolean> checkExist(String objectName) {
+        return checkExist(ossProperties.getBucketName(), objectName);
+    }
+
+    /**
+     * 校验文件是否存在
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件全路径
+     * @return 是否存在
+     */
+    public CompletableFuture<Boolean> checkExist(String bucketName, String objectName) {
+        return getObjectInfo(bucketName, objectName).thenApply(objectInfo -> objectInfo != null);
+    }
+
+    /**
+     * 获取文件信息
+     *
+     * @param objectName 文件全路径
+     * @return ObjectInfo对象信息，不存在时为null
+     */
+    public CompletableFuture<ObjectInfo> getObjectInfo(String objectName) {
+        return getObjectInfo(ossProperties.getBucketName(), objectName);
+    }
+
+    /**
+     * 获取文件信息
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件全路径
+     * @return ObjectInfo对象信息，不存在时为null
+     */
+    public CompletableFuture<ObjectInfo> getObjectInfo(String bucketName, String objectName) {
+        return headObjectInfo(bucketName, objectName);
+    }
+
+    /**
+     * 获取文本内容
+     *
+     * @param objectName 文件全路径
+     * @return 文本
+     */
+    public CompletableFuture<String> getContent(String objectName) {
+        return getContent(ossProperties.getBucketName(), objectName);
+    }
+
+    /**
+     * 获取文本内容
+     *
+     * @param bucketName 存储桶
+     * @param objectName 文件全路径
+     * @return 文本
+     */
+    public CompletableFuture<String> getContent(String bucketName, String objectName) {
+        return client.getObject(getObjectRequest(bucketName, objectName), AsyncResponseTransformer.toBytes())
+                .thenApply(bytes -> StandardCharsets.UTF_8.decode(bytes.asByteBuffer()).toString());
+    }
+
+    /**
+     * 获取文件流，响应头到达后即完成，数据边读边下载，使用完毕后需关闭
+     *
+     * @param objectName 文件全路径
+     * @return 文件流
+     */
+    public CompletableFuture<InputStream> getInputStream(String objectName) {
+        return getInputStream(ossProperties.getBucketName(), objectName);
+    }
+
+    /**
+     * 获取文件流，响应头到达后即完成，数据边读边下载，使用完毕后需关闭
+     *
+     * @param bucketName 存储桶
+     * @param objectName 文件全路径
+     * @return 文件流
+     */
+    public CompletableFuture<InputStream> getInputStream(String bucketName, String objectName) {
+        return getStream(getObjectRequest(bucketName, objectName)).thenApply(e -> e);
+    }
+
+    /**
+     * 获取文件分段流，响应头到达后即完成，数据边读边下载，使用完毕后需关闭
+     *
+     * @param bucketName 存储桶
+     * @param objectName 文件全路径
+     * @param range      分段，如 bytes=0-1023
+     * @return 文件流
+     */
+    public CompletableFuture<InputStream> getInputStream(String bucketName, String objectName, String range) {
+        GetObjectRequest request = GetObjectRequest.builder().bucket(bucketName).key(Util.formatPath(objectName)).range(range).build();
+        return getStream(request).thenApply(e -> e);
+    }
+
+    /**
+     * 下载文件
+     *
+     * @param objectName    文件全路径
+     * @param localFilePath 存放位置
+     * @return File
+     */
+    public CompletableFuture<File> getFile(String objectName, String localFilePath) {
+        return getFile(ossProperties.getBucketName(), objectName, localFilePath);
+    }
+
+    /**
+     * 下载文件
+     *
+     * @param bucketName    存储桶
+     * @param objectName    文件全路径
+     * @param localFilePath 存放位置，为目录时使用对象的文件名
+     * @return File
+     */
+    public CompletableFuture<File> getFile(String bucketName, String objectName, String localFilePath) {
+        File outputFile = new File(localFilePath);
+        if (!Util.checkIsFile(localFilePath)) {
+            outputFile = new File(Util.formatPath(localFilePath) + Util.getFilename(objectName));
+        }
+        File parent = outputFile.getAbsoluteFile().getParentFile();
+        if (!parent.exists()) {
+            parent.mkdirs();
+        }
+        File finalOutputFile = outputFile;
+        return client.getObject(getObjectRequest(bucketName, objectName), AsyncResponseTransformer.toFile(finalOutputFile))
+                .thenApply(r -> finalOutputFile);
+    }
+
+    /**
+     * 下载文件夹
+     *
+     * @param objectName    文件夹路径
+     * @param localFilePath 存放位置
+     * @return 下载结果
+     */
+    public CompletableFuture<BatchResult> getFolder(String objectName, String localFilePath) {
+        return getFolder(ossProperties.getBucketName(), objectName, localFilePath);
+    }
+
+    /**
+     * 下载文件夹
+     *
+     * @param bucketName    存储桶
+     * @param objectName    文件夹路径
+     * @param localFilePath 存放位置
+     * @return 下载结果，包含下载失败的文件
+     */
+    public CompletableFuture<BatchResult> getFolder(String bucketName, String objectName, String localFilePath) {
+        long startTime = System.currentTimeMillis();
+        String prefix = Util.formatPath(objectName);
+        AtomicLong successCount = new AtomicLong();
+        TransferListener counter = new TransferListener() {
+            @Override
+            public void transferComplete(Context.TransferComplete context) {
+                successCount.incrementAndGet();
+            }
+        };
+        DownloadDirectoryRequest request = DownloadDirectoryRequest.builder()
+                .bucket(bucketName)
+                .destination(Paths.get(localFilePath))
+                .listObjectsV2RequestTransformer(b -> b.prefix(prefix))
+                .downloadFileRequestTransformer(b -> b.addTransferListener(counter))
+                .build();
+        return transferManager.downloadDirectory(request).completionFuture().thenApply(completed -> {
+            BatchResult result = new BatchResult();
+            for (FailedFileDownload failed : completed.failedTransfers()) {
+                String key = failed.request().getObjectRequest().key();
+                log.error("下载文件失败【{}】", key, failed.exception());
+                result.getFailed().put(key, failed.exception().getMessage());
+            }
+            return result.setSuccessCount(successCount.get())
+                    .setCostTime(System.currentTimeMillis() - startTime);
+        });
+    }
+
+    /**
+     * 根据文件前置查询文件
+     *
+     * @param path 文件目录
+     * @return Object信息列表
+     */
+    public CompletableFuture<List<ObjectInfo>> listObjects(String path) {
+        return listObjects(ossProperties.getBucketName(), path);
+    }
+
+    /**
+     * 根据文件前置查询文件
+     *
+     * @param bucketName 桶名称
+     * @param path       文件目录
+     * @return Object信息列表
+     */
+    public CompletableFuture<List<ObjectInfo>> listObjects(String bucketName, String path) {
+        return listObject(bucketName, path, null).thenApply(list -> list.stream().map(e -> ObjectInfo.builder()
+                .uri(e.key())
+                .url(getDomain() + e.key())
+                .name(Util.getFilename(e.key()))
+                .uploadTime(Date.from(e.lastModified()))
+                .build()).collect(Collectors.toList()));
+    }
+
+    /**
+     * 根据文件前置查询文件列表
+     *
+     * @param path 文件目录
+     * @return Object列表
+     */
+    public CompletableFuture<List<S3Object>> listObject(String path) {
+        return listObject(ossProperties.getBucketName(), path, null);
+    }
+
+    /**
+     * 根据文件前置查询文件列表
+     *
+     * @param bucketName 桶名称
+     * @param path       文件目录
+     * @param keyword    关键字
+     * @return Object列表
+     */
+    public CompletableFuture<List<S3Object>> listObject(String bucketName, String path, String keyword) {
+        String prefix = Util.formatPath(path);
+        if (keyIndex != null) {
+            List<S3Object> indexed = keyIndex.search(bucketName, prefix, keyword, e -> new ObjectListIterator(client,
+                    ListObjectsV2Request.builder().bucket(bucketName).maxKeys(getListPageSize()).prefix(e).build()));
+            if (indexed != null) {
+                return CompletableFuture.completedFuture(indexed);
+            }
+        }
+        ListObjectsV2Request request = ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .maxKeys(getListPageSize())
+                .prefix(prefix)
+                .build();
+        List<S3Object> list = Collections.synchronizedList(new ArrayList<>());
+        return client.listObjectsV2Paginator(request).subscribe(response -> response.contents().forEach(e -> {
+            if (Util.isBlank(keyword) || e.key().contains(keyword)) {
+                list.add(e);
+            }
+        })).thenApply(v -> list);
+    }
+
+    /**
+     * 获取下一层级目录树
+     *
+     * @param path 路径
+     * @return 目录及文件节点
+     */
+    public CompletableFuture<List<ObjectTreeNode>> listNextLevel(String path) {
+        return listNextLevel(ossProperties.getBucketName(), path);
+    }
+
+    /**
+     * 获取下一层级目录树
+     *
+     * @param bucketName 桶名称
+     * @param path       路径
+     * @return 目录及文件节点
+     */
+    public CompletableFuture<List<ObjectTreeNode>> listNextLevel(String bucketName, String path) {
+        return listLevel(bucketName, Util.formatPath(path), null, new ArrayList<>());
+    }
+
+    /**
+     * 分页获取下一层级目录树，每页文件在前、文件夹在后
+     *
+     * @param bucketName 桶名称
+     * @param path       路径
+     * @param pageSize   每页数量，限制在1~1000之间
+     * @param token      页令牌，为空时从第一页开始
+     * @return 当前页节点及下一页令牌
+     */
+    public CompletableFuture<ObjectPage<ObjectTreeNode>> listNextLevel(String bucketName, String path, int pageSize, String token) {
+        return listLevelPage(bucketName, Util.formatPath(path), pageSize, token);
+    }
+
+    /**
+     * 依次请求各页，结果只在上一页完成后追加，无需同步
+     */
+    private CompletableFuture<List<ObjectTreeNode>> listLevel(String bucketName, String prefix, String token, List<ObjectTreeNode> result) {
+        return listLevelPage(bucketName, prefix, getListPageSize(), token).thenCompose(page -> {
+            result.addAll(page.getItems());
+            return page.hasMore()
+                    ? listLevel(bucketName, prefix, page.getNextToken(), result)
+                    : CompletableFuture.completedFuture(result);
+        });
+    }
+}
@@ -1,12 +1,15 @@
 package com.wiblog.oss.service;
 
+import com.wiblog.oss.bean.BatchResult;
 import com.wiblog.oss.bean.OssProperties;
 import lombok.extern.slf4j.Slf4j;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.model.*;
 import software.amazon.awssdk.transfer.s3.S3TransferManager;
 
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.stream.Stream;
 
 /**
  * 移除操作
@@ -18,7 +21,11 @@ import java.util.ArrayList;
 public class DeleteOperations extends Operations {
 
     public DeleteOperations(OssProperties ossProperties, S3AsyncClient client, S3TransferManager transferManager) {
-        super(ossProperties, client, transferManager);
+        this(ossProperties, client, transferManager, new OssDependencies());
+    }
+
+    public DeleteOperations(OssProperties ossProperties, S3AsyncClient client, S3TransferManager transferManager, OssDependencies dependencies) {
+        super(ossProperties, client, transferManager, dependencies);
     }
 
     /**
@@ -31,56 +38,109 @@ public class DeleteOperations extends Operations {
     }
 
     /**
-     * 删除文件
+     * 删除文件，key 与上传时一样经过 formatPath 处理，无扩展名的key会补全/
      *
      * @param bucketName bucket名称
      * @param objectName 文件全路径
      */
     public void removeObject(String bucketName, String objectName) {
+        String key = formatPath(objectName);
         handleRequest(() -> client.deleteObject(x -> x.bucket(bucketName)
-                .key(formatPath(objectName))
+                .key(key)
                 .build()));
+        objectRemoved(bucketName, key);
+    }
+
+    /**
+     * 批量删除文件
+     *
+     * @param objectNames 文件全路径列表
+     * @return 删除结果，包含删除失败的文件
+     */
+    public BatchResult removeObjects(Collection<String> objectNames) {
+        return removeObjects(ossProperties.getBucketName(), objectNames.stream());
+    }
+
+    /**
+     * 批量删除文件
+     *
+     * @param bucketName  bucket名称
+     * @param objectNames 文件全路径列表
+     * @return 删除结果，包含删除失败的文件
+     */
+    public BatchResult removeObjects(String bucketName, Collection<String> objectNames) {
+        return removeObjects(bucketName, objectNames.stream());
+    }
+
+    /**
+     * 批量删除文件，按需从流中读取，适用于数量巨大的文件列表
+     *
+     * @param objectNames 文件全路径流
+     * @return 删除结果，包含删除失败的文件
+     */
+    public BatchResult removeObjects(Stream<String> objectNames) {
+        return removeObjects(ossProperties.getBucketName(), objectNames);
+    }
+
+    /**
+     * 批量删除文件，按需从流中读取，适用于数量巨大的文件列表
+     * <p>
+     * key 按列举结果原样使用，只将\替换为/并去掉开头的/，不像 removeObject 那样为无扩展名的key补全/
+     *
+     * @param bucketName  bucket名称
+     * @param objectNames 文件全路径流
+     * @return 删除结果，包含删除失败的文件
+     */
+    public BatchResult removeObjects(String bucketName, Stream<String> objectNames) {
+        Iterator<String> keys = objectNames.map(this::formatKey).filter(e -> !e.isEmpty()).iterator();
+        BatchResult result = deleteKeys(bucketName, keys);
+        log.info("批量删除成功 {} 个，失败 {} 个，耗时 {}ms，{} 个/秒", result.getSuccessCount(), result.getFailed().size(),
+                result.getCostTime(), result.getSuccessCount() * 1000 / Math.max(result.getCostTime(), 1));
+        return result;
     }
 
     /**
      * 删除文件夹
      *
      * @param path 文件夹
+     * @return 删除结果
      */
-    public void removeFolder(String path) {
-        removeFolder(ossProperties.getBucketName(), path);
+    public BatchResult removeFolder(String path) {
+        return removeFolder(ossProperties.getBucketName(), path);
     }
 
     /**
-     * 删除文件夹
+     * 删除文件夹，边列举边按批并发删除
      *
      * @param bucketName bucket名称
      * @param path       文件夹
+     * @return 删除结果，包含删除失败的文件
      */
-    public void removeFolder(String bucketName, String path) {
-        ListObjectsV2Request listObjectsRequest = ListObjectsV2Request.builder()
+    public BatchResult removeFolder(String bucketName, String path) {
+        String prefix = formatPath(path);
+        if (prefix.isEmpty()) {
+            throw new IllegalArgumentException("不允许删除存储桶根目录");
+        }
+        ListObjectsV2Request request = ListObjectsV2Request.builder()
                 .bucket(bucketName)
-                .prefix(path)
-                .maxKeys(20)
+                .prefix(prefix)
+                .maxKeys(getListPageSize())
                 .build();
+        Iterator<S3Object> objects = new ObjectListIterator(client, request);
+        BatchResult result = deleteKeys(bucketName, new Iterator<String>() {
+            @Override
+            public boolean hasNext() {
+                return objects.hasNext();
+            }
 
-        boolean done = false;
-        while (!done) {
-            ListObjectsV2Response listObjectsResponse = handleRequest(() -> client.listObjectsV2(listObjectsRequest));
-            ArrayList<ObjectIdentifier> toDelete = new ArrayList<>();
-            listObjectsResponse.contents().forEach(s3Object -> toDelete.add(ObjectIdentifier.builder()
-                    .key(formatPath(s3Object.key()))
-                    .build()));
-
-            DeleteObjectsRequest deleteObjectsRequest = DeleteObjectsRequest.builder()
-                    .bucket(bucketName)
-                    .delete(Delete.builder().objects(toDelete).build())
-                    .build();
-            handleRequest(() -> client.deleteObjects(deleteObjectsRequest));
-
-            if (listObjectsResponse.nextContinuationToken() == null) {
-                done = true;
+            @Override
+            public String next() {
+                return objects.next().key();
             }
-        }
+        });
+        prefixChanged(bucketName, prefix);
+        log.info("删除文件夹【{}】成功 {} 个，失败 {} 个，耗时 {}ms，{} 个/秒", prefix, result.getSuccessCount(),
+                result.getFailed().size(), result.getCostTime(), result.getSuccessCount() * 1000 / Math.max(result.getCostTime(), 1));
+        return result;
     }
 }
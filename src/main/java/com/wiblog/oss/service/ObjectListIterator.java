@@ -0,0 +1,75 @@
+package com.wiblog.oss.service;
+
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 按需分页的对象迭代器
+ * <p>
+ * 消费当前页时预取下一页，内存中最多保留两页数据
+ *
+ * @author panwm
+ * @since 2024/9/16 20:47
+ */
+class ObjectListIterator implements Iterator<S3Object> {
+
+    private final S3AsyncClient client;
+
+    private final ListObjectsV2Request request;
+
+    private Iterator<S3Object> page = Collections.emptyIterator();
+
+    /**
+     * 下一页请求，没有更多数据时为null
+     */
+    private CompletableFuture<ListObjectsV2Response> next;
+
+    private boolean started;
+
+    ObjectListIterator(S3AsyncClient client, ListObjectsV2Request request) {
+        this.client = client;
+        this.request = request;
+    }
+
+    /**
+     * 立即发出首页请求，调用方可在准备其他数据的同时等待列举返回
+     *
+     * @return 本迭代器
+     */
+    ObjectListIterator prefetch() {
+        if (!started) {
+            started = true;
+            next = client.listObjectsV2(request);
+        }
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        prefetch();
+        while (!page.hasNext() && next != null) {
+            ListObjectsV2Response response = next.join();
+            page = response.contents().iterator();
+            String token = response.nextContinuationToken();
+            next = Boolean.TRUE.equals(response.isTruncated()) && token != null
+                    ? client.listObjectsV2(request.toBuilder().continuationToken(token).build())
+                    : null;
+        }
+        return page.hasNext();
+    }
+
+    @Override
+    public S3Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+}
@@ -1,24 +1,50 @@
 package com.wiblog.oss.service;
 
+import com.wiblog.oss.bean.BatchResult;
 import com.wiblog.oss.bean.ObjectInfo;
+import com.wiblog.oss.bean.ObjectPage;
 import com.wiblog.oss.bean.ObjectTreeNode;
 import com.wiblog.oss.bean.OssProperties;
+import com.wiblog.oss.cache.KeyIndex;
+import com.wiblog.oss.cache.CachedInfo;
+import com.wiblog.oss.cache.MetadataCache;
 import com.wiblog.oss.constant.ClientEnum;
+import com.wiblog.oss.util.PublisherInputStream;
 import com.wiblog.oss.util.Util;
 import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
 import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
 import software.amazon.awssdk.services.s3.model.S3Exception;
 import software.amazon.awssdk.services.s3.model.S3Object;
 import software.amazon.awssdk.transfer.s3.S3TransferManager;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * @author panwm
@@ -27,16 +53,37 @@ import java.util.function.Supplier;
 @Slf4j
 public abstract class Operations {
 
+    /**
+     * 单次 DeleteObjects 请求的最大对象数
+     */
+    protected static final int MAX_BATCH_SIZE = 1000;
+
     protected final OssProperties ossProperties;
 
     protected final S3AsyncClient client;
 
     protected final S3TransferManager transferManager;
 
+    /**
+     * 元数据缓存，未启用时为null
+     */
+    protected final MetadataCache metadataCache;
+
+    /**
+     * 本地key索引，未启用时为null
+     */
+    protected final KeyIndex keyIndex;
+
     public Operations(OssProperties ossProperties, S3AsyncClient client, S3TransferManager transferManager) {
+        this(ossProperties, client, transferManager, new OssDependencies());
+    }
+
+    public Operations(OssProperties ossProperties, S3AsyncClient client, S3TransferManager transferManager, OssDependencies dependencies) {
         this.ossProperties = ossProperties;
         this.client = client;
         this.transferManager = transferManager;
+        this.metadataCache = dependencies.getMetadataCache();
+        this.keyIndex = dependencies.getKeyIndex();
     }
 
     public <T> T handleRequest(Supplier<CompletableFuture<T>> requestSupplier) {
@@ -59,10 +106,454 @@ public abstract class Operations {
         return null;
     }
 
+    /**
+     * 以有限的并发度依次执行异步任务，全部完成后返回
+     * <p>
+     * 任一任务或迭代失败后不再提交新任务，等待已提交任务结束后以 CompletionException 抛出首个异常
+     *
+     * @param items       任务参数
+     * @param parallelism 最大并发数
+     * @param task        异步任务
+     * @param <T>         参数类型
+     */
+    protected <T> void runBounded(Iterator<T> items, int parallelism, Function<T, CompletableFuture<?>> task) {
+        int permits = Math.max(parallelism, 1);
+        Semaphore semaphore = new Semaphore(permits);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        try {
+            while (failure.get() == null) {
+                T item;
+                try {
+                    if (!items.hasNext()) {
+                        break;
+                    }
+                    item = items.next();
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                    break;
+                }
+                semaphore.acquire();
+                CompletableFuture<?> future;
+                try {
+                    future = task.apply(item);
+                } catch (RuntimeException e) {
+                    semaphore.release();
+                    failure.compareAndSet(null, e);
+                    break;
+                }
+                future.whenComplete((r, e) -> {
+                    if (e != null) {
+                        failure.compareAndSet(null, e);
+                    }
+                    semaphore.release();
+                });
+            }
+            // 等待所有已提交的任务结束
+            semaphore.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+        Throwable e = failure.get();
+        if (e != null) {
+            throw toCompletionException(e);
+        }
+    }
+
+    /**
+     * 以有限的并发度依次执行异步任务，不阻塞调用线程
+     * <p>
+     * 与 runBounded 相同，任一任务或迭代失败后不再提交新任务，已提交任务全部结束后以首个异常结束。
+     * 后续任务在前一任务完成的线程上提交，迭代器不应阻塞
+     *
+     * @param items       任务参数
+     * @param parallelism 最大并发数
+     * @param task        异步任务
+     * @param <T>         参数类型
+     * @return 全部任务结束的信号
+     */
+    protected static <T> CompletableFuture<Void> runBoundedAsync(Iterator<T> items, int parallelism, Function<T, CompletableFuture<?>> task) {
+        BoundedRunner<T> runner = new BoundedRunner<>(items, Math.max(parallelism, 1), task);
+        runner.pump();
+        return runner.result;
+    }
+
+    /**
+     * runBoundedAsync 的调度状态，任务同步完成时由正在调度的线程继续提交，避免递归
+     */
+    private static class BoundedRunner<T> {
+
+        private final Iterator<T> items;
+
+        private final int parallelism;
+
+        private final Function<T, CompletableFuture<?>> task;
+
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        private int inFlight;
+
+        private boolean exhausted;
+
+        private Throwable failure;
+
+        private boolean pumping;
+
+        private boolean pending;
+
+        BoundedRunner(Iterator<T> items, int parallelism, Function<T, CompletableFuture<?>> task) {
+            this.items = items;
+            this.parallelism = parallelism;
+            this.task = task;
+        }
+
+        void pump() {
+            synchronized (this) {
+                if (pumping) {
+                    pending = true;
+                    return;
+                }
+                pumping = true;
+            }
+            while (true) {
+                T item = null;
+                boolean submit = false;
+                boolean finished = false;
+                synchronized (this) {
+                    if (failure == null && !exhausted && inFlight < parallelism) {
+                        try {
+                            if (items.hasNext()) {
+                                item = items.next();
+                                inFlight++;
+                                submit = true;
+                            } else {
+                                exhausted = true;
+                            }
+                        } catch (RuntimeException e) {
+                            failure = e;
+                        }
+                    } else if (pending) {
+                        pending = false;
+                    } else {
+                        pumping = false;
+                        finished = inFlight == 0 && (exhausted || failure != null);
+                        if (!finished) {
+                            return;
+                        }
+                    }
+                }
+                if (finished) {
+                    if (failure != null) {
+                        result.completeExceptionally(toCompletionException(failure));
+                    } else {
+                        result.complete(null);
+                    }
+                    return;
+                }
+                if (submit) {
+                    submit(item);
+                }
+            }
+        }
+
+        private void submit(T item) {
+            CompletableFuture<?> future;
+            try {
+                future = task.apply(item);
+            } catch (RuntimeException e) {
+                complete(e);
+                return;
+            }
+            future.whenComplete((r, e) -> {
+                complete(e);
+                pump();
+            });
+        }
+
+        private synchronized void complete(Throwable e) {
+            if (e != null && failure == null) {
+                failure = e;
+            }
+            inFlight--;
+        }
+    }
+
+    /**
+     * 将迭代器按固定大小分组，按需读取
+     *
+     * @param items 元素
+     * @param size  每组最大数量
+     * @param <T>   元素类型
+     * @return 分组迭代器
+     */
+    protected static <T> Iterator<List<T>> partition(Iterator<T> items, int size) {
+        return new Iterator<List<T>>() {
+            @Override
+            public boolean hasNext() {
+                return items.hasNext();
+            }
+
+            @Override
+            public List<T> next() {
+                if (!items.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                List<T> batch = new ArrayList<>(size);
+                while (batch.size() < size && items.hasNext()) {
+                    batch.add(items.next());
+                }
+                return batch;
+            }
+        };
+    }
+
+    /**
+     * 批量删除引擎，按每批1000个打包 DeleteObjects 请求并发执行
+     * <p>
+     * 单个对象或整批请求失败时记录到失败列表，不中断其余批次
+     *
+     * @param bucketName 存储桶
+     * @param keys       待删除的对象key
+     * @return 删除结果
+     */
+    protected BatchResult deleteKeys(String bucketName, Iterator<String> keys) {
+        long startTime = System.currentTimeMillis();
+        AtomicLong successCount = new AtomicLong();
+        Map<String, String> failed = new ConcurrentHashMap<>();
+        runBounded(partition(keys, MAX_BATCH_SIZE), ossProperties.getDeleteParallelism(), batch -> {
+            List<ObjectIdentifier> objects = batch.stream()
+                    .map(e -> ObjectIdentifier.builder().key(e).build())
+                    .collect(Collectors.toList());
+            return client.deleteObjects(b -> b.bucket(bucketName).delete(d -> d.objects(objects).quiet(true)))
+                    .handle((response, e) -> {
+                        if (e != null) {
+                            log.error("批量删除失败，共 {} 个", batch.size(), e);
+                            String message = String.valueOf((e.getCause() != null ? e.getCause() : e).getMessage());
+                            batch.forEach(key -> failed.put(key, message));
+                            batch.forEach(key -> objectChanged(bucketName, key));
+                        } else {
+                            Set<String> errors = new HashSet<>();
+                            response.errors().forEach(error -> {
+                                errors.add(error.key());
+                                failed.put(error.key(), error.code() + ": " + error.message());
+                            });
+                            successCount.addAndGet(batch.size() - response.errors().size());
+                            batch.forEach(key -> {
+                                if (errors.contains(key)) {
+                                    objectChanged(bucketName, key);
+                                } else {
+                                    objectRemoved(bucketName, key);
+                                }
+                            });
+                        }
+                        return null;
+                    });
+        });
+        BatchResult result = new BatchResult();
+        result.getFailed().putAll(new TreeMap<>(failed));
+        return result.setSuccessCount(successCount.get())
+                .setCostTime(System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 按分隔符列举一层目录中的一页，文件在前、文件夹在后
+     * <p>
+     * 单次请求即返回，页大小同时计入文件和文件夹，页内的文件夹由服务端去重
+     *
+     * @param bucketName 存储桶
+     * @param prefix     目录前缀，为空或以/结尾
+     * @param pageSize   每页数量，限制在1~1000之间
+     * @param token      页令牌，为空时从第一页开始
+     * @return 当前页节点及下一页令牌
+     */
+    protected CompletableFuture<ObjectPage<ObjectTreeNode>> listLevelPage(String bucketName, String prefix, int pageSize, String token) {
+        ListObjectsV2Request request = ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .prefix(prefix)
+                .delimiter("/")
+                .maxKeys(Math.min(Math.max(pageSize, 1), 1000))
+                .continuationToken(Util.isBlank(token) ? null : token)
+                .build();
+        return client.listObjectsV2(request).thenApply(response -> {
+            List<ObjectTreeNode> items = new ArrayList<>(response.contents().size() + response.commonPrefixes().size());
+            for (S3Object object : response.contents()) {
+                if (object.size() > 0) {
+                    items.add(buildTreeNode(object));
+                }
+            }
+            for (CommonPrefix commonPrefix : response.commonPrefixes()) {
+                items.add(buildTreeNode(commonPrefix.prefix()));
+            }
+            return new ObjectPage<ObjectTreeNode>()
+                    .setItems(items)
+                    .setNextToken(Boolean.TRUE.equals(response.isTruncated()) ? response.nextContinuationToken() : null);
+        });
+    }
+
+    /**
+     * 包装为 CompletionException，已是 CompletionException 时原样返回
+     *
+     * @param e 异常
+     * @return CompletionException
+     */
+    protected static CompletionException toCompletionException(Throwable e) {
+        return e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+    }
+
+    /**
+     * 获取文件信息，对象不存在时为null，其他失败以异常结束
+     * <p>
+     * 优先读取元数据缓存，仅缓存成功结果和明确的404
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件全路径
+     * @return ObjectInfo对象信息
+     */
+    protected CompletableFuture<ObjectInfo> headObjectInfo(String bucketName, String objectName) {
+        if (metadataCache != null) {
+            CachedInfo cached = metadataCache.get(bucketName, objectName);
+            if (cached.isPresent()) {
+                return CompletableFuture.completedFuture(cached.getObjectInfo());
+            }
+        }
+        CompletableFuture<HeadObjectResponse> future = client.headObject(b -> b.bucket(bucketName).key(objectName));
+        return future.handle((response, e) -> {
+            if (e != null && !isNotFound(future)) {
+                throw toCompletionException(e);
+            }
+            ObjectInfo objectInfo = buildObjectInfo(objectName, response);
+            if (metadataCache != null) {
+                metadataCache.put(bucketName, objectName, objectInfo);
+            }
+            return objectInfo;
+        });
+    }
+
+    /**
+     * 以背压方式订阅对象内容，响应头到达后即完成，数据边读边下载
+     *
+     * @param request 请求
+     * @return 文件流
+     */
+    protected CompletableFuture<PublisherInputStream> getStream(GetObjectRequest request) {
+        return client.getObject(request, AsyncResponseTransformer.toPublisher()).thenApply(publisher -> {
+            PublisherInputStream inputStream = new PublisherInputStream(ossProperties.getDownload().getStreamBufferSize());
+            publisher.subscribe(inputStream);
+            return inputStream;
+        });
+    }
+
+    protected GetObjectRequest getObjectRequest(String bucketName, String objectName) {
+        return GetObjectRequest.builder().bucket(bucketName).key(Util.formatPath(objectName)).build();
+    }
+
+    /**
+     * 判断请求是否因对象不存在而失败
+     *
+     * @param future 已完成的请求
+     * @return 是否不存在
+     */
+    protected boolean isNotFound(CompletableFuture<?> future) {
+        if (!future.isCompletedExceptionally()) {
+            return false;
+        }
+        Throwable e = future.handle((r, t) -> t).join();
+        if (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e instanceof NoSuchKeyException || (e instanceof S3Exception && ((S3Exception) e).statusCode() == 404);
+    }
+
+    /**
+     * 对象上传后失效元数据缓存并记录到key索引
+     *
+     * @param bucketName 存储桶
+     * @param objectName 对象key
+     * @param size       对象大小
+     */
+    protected void objectPut(String bucketName, String objectName, long size) {
+        if (metadataCache != null) {
+            metadataCache.invalidate(bucketName, objectName);
+        }
+        if (keyIndex != null) {
+            keyIndex.put(bucketName, objectName, size);
+        }
+    }
+
+    /**
+     * 对象删除后失效元数据缓存并从key索引移除
+     *
+     * @param bucketName 存储桶
+     * @param objectName 对象key
+     */
+    protected void objectRemoved(String bucketName, String objectName) {
+        if (metadataCache != null) {
+            metadataCache.invalidate(bucketName, objectName);
+        }
+        if (keyIndex != null) {
+            keyIndex.remove(bucketName, objectName);
+        }
+    }
+
+    /**
+     * 对象被修改但大小未知时失效元数据缓存，key索引在下次查询时重新列举该对象
+     *
+     * @param bucketName 存储桶
+     * @param objectName 对象key
+     */
+    protected void objectChanged(String bucketName, String objectName) {
+        if (metadataCache != null) {
+            metadataCache.invalidate(bucketName, objectName);
+        }
+        if (keyIndex != null) {
+            keyIndex.invalidatePrefix(bucketName, objectName);
+        }
+    }
+
+    /**
+     * 前缀下的对象被批量修改或删除后失效元数据缓存和key索引
+     *
+     * @param bucketName 存储桶
+     * @param prefix     前缀
+     */
+    protected void prefixChanged(String bucketName, String prefix) {
+        if (metadataCache != null) {
+            metadataCache.invalidatePrefix(bucketName, prefix);
+        }
+        if (keyIndex != null) {
+            keyIndex.invalidatePrefix(bucketName, prefix);
+        }
+    }
+
+    /**
+     * @return 列举对象时的每页数量，限制在1~1000之间
+     */
+    protected int getListPageSize() {
+        return Math.min(Math.max(ossProperties.getListPageSize(), 1), 1000);
+    }
+
     protected String formatPath(String path) {
         return Util.formatPath(path);
     }
 
+    /**
+     * 规范化对象key，将\替换为/并去掉开头的/，不像 formatPath 那样为无扩展名的key补全/
+     *
+     * @param objectName 对象key
+     * @return key
+     */
+    protected String formatKey(String objectName) {
+        if (objectName == null) {
+            return "";
+        }
+        String key = objectName.replace('\\', '/');
+        int start = 0;
+        while (start < key.length() && key.charAt(start) == '/') {
+            start++;
+        }
+        return key.substring(start);
+    }
+
     protected ObjectInfo buildObjectInfo(String key, Date lastModified, long size) {
         return ObjectInfo.builder()
                 .uri(key)
@@ -87,6 +578,7 @@ public abstract class Operations {
                 .uploadTime(Date.from(object.lastModified()))
                 .size(object.contentLength())
                 .ext(Util.getExtension(key))
+                .etag(object.eTag())
                 .build();
     }
 
@@ -0,0 +1,53 @@
+package com.wiblog.oss.service;
+
+import com.wiblog.oss.cache.BlockCache;
+import com.wiblog.oss.cache.KeyIndex;
+import com.wiblog.oss.cache.MetadataCache;
+import com.wiblog.oss.metrics.OssMetrics;
+import com.wiblog.oss.store.HashIndex;
+import com.wiblog.oss.store.UploadSessionStore;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * OssTemplate 与各操作类的可选组件，未启用的组件为null
+ * <p>
+ * 新增组件时只需在此添加字段，不再为每个操作类增加构造器重载
+ *
+ * @author panwm
+ * @since 2024/10/6 18:00
+ */
+@Data
+@Accessors(chain = true)
+public class OssDependencies {
+
+    /**
+     * 元数据缓存
+     */
+    private MetadataCache metadataCache;
+
+    /**
+     * 分片上传进度存储
+     */
+    private UploadSessionStore uploadSessionStore;
+
+    /**
+     * 内容hash索引
+     */
+    private HashIndex hashIndex;
+
+    /**
+     * 本地key索引
+     */
+    private KeyIndex keyIndex;
+
+    /**
+     * 分块读缓存，OssTemplate 在为null且 oss.cache.block.enable 开启时按配置创建
+     */
+    private BlockCache blockCache;
+
+    /**
+     * 指标记录
+     */
+    private OssMetrics metrics;
+}
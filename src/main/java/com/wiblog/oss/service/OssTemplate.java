@@ -1,6 +1,10 @@
 package com.wiblog.oss.service;
 
 import com.wiblog.oss.bean.OssProperties;
+import com.wiblog.oss.cache.BlockCache;
+import com.wiblog.oss.metrics.MeteredS3AsyncClient;
+import com.wiblog.oss.metrics.MeteredS3TransferManager;
+import com.wiblog.oss.metrics.OssMetrics;
 import com.wiblog.oss.util.Util;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.Assert;
@@ -16,6 +20,7 @@ import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
 import software.amazon.awssdk.transfer.s3.S3TransferManager;
 
 import java.net.URI;
+import java.nio.file.Paths;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -43,11 +48,28 @@ public class OssTemplate {
 
     private DeleteOperations deleteOperations;
 
+    private AsyncOssTemplate asyncOssTemplate;
+
+    /**
+     * 可选组件
+     */
+    private final OssDependencies dependencies;
+
+    /**
+     * 按配置创建的分块读缓存，停止时清理
+     */
+    private BlockCache blockCache;
+
     public OssTemplate(OssProperties ossProperties) {
+        this(ossProperties, new OssDependencies());
+    }
+
+    public OssTemplate(OssProperties ossProperties, OssDependencies dependencies) {
         Assert.notNull(ossProperties.getEndpoint(), "illegal argument oss.endpoint");
         Assert.notNull(ossProperties.getAccessKey(), "illegal argument oss.access-key");
         Assert.notNull(ossProperties.getSecretKey(), "illegal argument oss.secret-key");
         this.ossProperties = ossProperties;
+        this.dependencies = dependencies;
         this.start();
     }
 
@@ -56,17 +78,22 @@ public class OssTemplate {
         StaticCredentialsProvider credentialsProvider = StaticCredentialsProvider.create(
                 AwsBasicCredentials.create(ossProperties.getAccessKey(), ossProperties.getSecretKey()));
 
-        this.client = S3AsyncClient.crtBuilder()
+        S3AsyncClient crtClient = S3AsyncClient.crtBuilder()
                 .credentialsProvider(credentialsProvider)
                 .endpointOverride(URI.create(ossProperties.getEndpoint()))
                 .region(Region.US_EAST_1)
                 .targetThroughputInGbps(20.0)
-                .minimumPartSizeInBytes(10 * 1024 * 1024L)
+                .minimumPartSizeInBytes(ossProperties.getUpload().getPartSize())
+                .maxConcurrency(ossProperties.getMaxConnections())
                 .checksumValidationEnabled(false)
                 .build();
 
         //AWS基于 CRT 的 S3 AsyncClient 实例用作 S3 传输管理器的底层客户端
-        this.transferManager = S3TransferManager.builder().s3Client(this.client).build();
+        S3TransferManager crtTransferManager = S3TransferManager.builder().s3Client(crtClient).build();
+        // 传输管理器依赖 CRT 客户端的分片能力，不能包装其客户端，改为以传输为单位记录指标
+        OssMetrics metrics = dependencies.getMetrics();
+        this.transferManager = metrics == null ? crtTransferManager : new MeteredS3TransferManager(crtTransferManager, metrics);
+        this.client = metrics == null ? crtClient : new MeteredS3AsyncClient(crtClient, metrics);
 
         // 创建存储桶
         createBucket();
@@ -77,6 +104,9 @@ public class OssTemplate {
     public void stop() {
         this.client.close();
         this.transferManager.close();
+        if (this.blockCache != null) {
+            this.blockCache.clear();
+        }
     }
 
     private void createBucket() {
@@ -105,9 +135,21 @@ public class OssTemplate {
     }
 
     private void initOperations() {
-        this.putOperations = new PutOperations(this.ossProperties, this.client, this.transferManager);
-        this.queryOperations = new QueryOperations(this.ossProperties, this.client, this.transferManager);
-        this.deleteOperations = new DeleteOperations(this.ossProperties, this.client, this.transferManager);
+        OssProperties.Cache.Block block = ossProperties.getCache().getBlock();
+        if (dependencies.getBlockCache() == null && block.isEnable()) {
+            this.blockCache = new BlockCache(Paths.get(block.getDir()), block.getBlockSize(), block.getMaxSize(), block.getMaxRangeRatio());
+            dependencies.setBlockCache(this.blockCache);
+        }
+        this.putOperations = new PutOperations(this.ossProperties, this.client, this.transferManager, this.dependencies);
+        this.queryOperations = new QueryOperations(this.ossProperties, this.client, this.transferManager, this.dependencies);
+        this.deleteOperations = new DeleteOperations(this.ossProperties, this.client, this.transferManager, this.dependencies);
+        this.asyncOssTemplate = new AsyncOssTemplate(
+                new AsyncPutOperations(this.ossProperties, this.client, this.transferManager, this.dependencies),
+                new AsyncQueryOperations(this.ossProperties, this.client, this.transferManager, this.dependencies),
+                new AsyncDeleteOperations(this.ossProperties, this.client, this.transferManager, this.dependencies));
+        if (this.dependencies.getMetrics() != null) {
+            this.dependencies.getMetrics().bindBufferPool(this.putOperations.getBufferPool());
+        }
     }
 
     public PutOperations put() {
@@ -122,4 +164,11 @@ public class OssTemplate {
         return this.deleteOperations;
     }
 
+    /**
+     * @return 异步操作入口
+     */
+    public AsyncOssTemplate async() {
+        return this.asyncOssTemplate;
+    }
+
 }
@@ -1,29 +1,57 @@
 package com.wiblog.oss.service;
 
+import com.wiblog.oss.bean.BatchResult;
 import com.wiblog.oss.bean.ObjectInfo;
 import com.wiblog.oss.bean.OssProperties;
 import com.wiblog.oss.bean.chunk.*;
+import com.wiblog.oss.store.HashIndex;
+import com.wiblog.oss.store.UploadSessionStore;
+import com.wiblog.oss.util.BufferPool;
+import com.wiblog.oss.util.ByteRange;
 import com.wiblog.oss.util.Util;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
+import org.springframework.util.DigestUtils;
 import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
 import software.amazon.awssdk.core.async.BlockingInputStreamAsyncRequestBody;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.model.*;
 import software.amazon.awssdk.transfer.s3.S3TransferManager;
 import software.amazon.awssdk.transfer.s3.model.*;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * 上传操作
@@ -34,8 +62,51 @@ import java.util.stream.Collectors;
 @Slf4j
 public class PutOperations extends Operations {
 
+    /**
+     * 分片上传除最后一片外的最小分片大小
+     */
+    private static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    /**
+     * 分片上传允许的最大分片数
+     */
+    private static final int MAX_PARTS = 10_000;
+
+    /**
+     * 记录文件内容hash的对象元数据名
+     */
+    public static final String HASH_METADATA = "content-hash";
+
+    /**
+     * 单次 CopyObject 请求允许的最大对象大小
+     */
+    private static final long MAX_COPY_SIZE = 5L * 1024 * 1024 * 1024;
+
+    /**
+     * 流式上传与分片上传共用的堆外缓冲区
+     */
+    private final BufferPool bufferPool;
+
+    /**
+     * 分片上传进度存储，为null时不记录进度
+     */
+    private final UploadSessionStore uploadSessionStore;
+
+    /**
+     * 内容hash索引，为null时只校验目标位置
+     */
+    private final HashIndex hashIndex;
+
     public PutOperations(OssProperties ossProperties, S3AsyncClient client, S3TransferManager transferManager) {
-        super(ossProperties, client, transferManager);
+        this(ossProperties, client, transferManager, new OssDependencies());
+    }
+
+    public PutOperations(OssProperties ossProperties, S3AsyncClient client, S3TransferManager transferManager, OssDependencies dependencies) {
+        super(ossProperties, client, transferManager, dependencies);
+        this.uploadSessionStore = dependencies.getUploadSessionStore();
+        this.hashIndex = dependencies.getHashIndex();
+        OssProperties.Upload upload = ossProperties.getUpload();
+        this.bufferPool = new BufferPool(Math.max(upload.getStreamPartSize(), MIN_PART_SIZE), upload.getBufferPoolMaxSize());
     }
 
     private boolean isExist(String bucketName) {
@@ -88,6 +159,20 @@ public class PutOperations extends Operations {
     }
 
 
+    /**
+     * 上传长度已知的文件流
+     *
+     * @param path          路径
+     * @param filename      文件名
+     * @param in            文件流
+     * @param contentLength 文件大小
+     * @return 文件uri
+     */
+    public ObjectInfo putObject(String path, String filename, InputStream in, long contentLength) {
+        return putObjectForKey(ossProperties.getBucketName(), formatPath(path) + filename, in, contentLength);
+    }
+
+
     /**
      * 上传文件
      *
@@ -139,6 +224,12 @@ public class PutOperations extends Operations {
      */
     public ObjectInfo putObjectForKey(String bucketName, String objectName, File file) {
         objectName = formatPath(objectName);
+        OssProperties.Upload upload = ossProperties.getUpload();
+        if (upload.getParallelism() > 1 && file.length() >= upload.getParallelThreshold()) {
+            putFileInParallel(bucketName, objectName, file);
+            objectPut(bucketName, objectName, file.length());
+            return buildObjectInfo(objectName, new Date(), file.length());
+        }
         PutObjectRequest putObjectRequest = PutObjectRequest.builder().bucket(bucketName)
                 .key(objectName)
                 .contentType(Util.getContentType(objectName))
@@ -150,24 +241,109 @@ public class PutOperations extends Operations {
 
         // 等待上传完成并获取上传结果
         fileUpload.completionFuture().join();
+        objectPut(bucketName, objectName, file.length());
         return buildObjectInfo(objectName, new Date(), file.length());
     }
 
     /**
+     * 分片并发上传文件，各分片通过内存映射直接从页缓存读取，失败时终止分片上传
+     */
+    private void putFileInParallel(String bucketName, String objectName, File file) {
+        OssProperties.Upload upload = ossProperties.getUpload();
+        long size = file.length();
+        // 分片数不能超过10000
+        long partSize = Math.max(Math.max(upload.getPartSize(), MIN_PART_SIZE), (size + MAX_PARTS - 1) / MAX_PARTS);
+        List<ByteRange> parts = new ArrayList<>();
+        for (long start = 0; start < size; start += partSize) {
+            parts.add(new ByteRange(start, Math.min(start + partSize, size) - 1));
+        }
+        String uploadId = client.createMultipartUpload(b -> b
+                .bucket(bucketName)
+                .key(objectName)
+                .contentType(Util.getContentType(objectName))).join().uploadId();
+        CompletedPart[] completedParts = new CompletedPart[parts.size()];
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Iterator<Integer> indexes = IntStream.range(0, parts.size()).iterator();
+            runBounded(indexes, upload.getParallelism(), index -> {
+                ByteRange part = parts.get(index);
+                MappedByteBuffer buffer;
+                try {
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, part.getStart(), part.length());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                UploadPartRequest request = UploadPartRequest.builder()
+                        .bucket(bucketName)
+                        .key(objectName)
+                        .uploadId(uploadId)
+                        .partNumber(index + 1)
+                        .contentLength(part.length())
+                        .build();
+                return client.uploadPart(request, AsyncRequestBody.fromByteBufferUnsafe(buffer))
+                        .thenAccept(r -> completedParts[index] = CompletedPart.builder().partNumber(index + 1).eTag(r.eTag()).build());
+            });
+            client.completeMultipartUpload(b -> b
+                    .bucket(bucketName)
+                    .key(objectName)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())).join();
+        } catch (IOException e) {
+            abortMultipartUpload(bucketName, objectName, uploadId);
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            abortMultipartUpload(bucketName, objectName, uploadId);
+            throw e;
+        }
+    }
+
+    /**
+     * 上传长度未知的文件流，按固定大小分片边读边上传，占用内存与文件大小无关
+     * <p>
+     * 分片数最多10000个，文件大小上限为 10000 × oss.upload.stream-part-size（默认约97GB），
+     * 超过时上传终止并抛出 IllegalArgumentException；更大的文件请使用已知长度的重载
+     *
      * @param bucketName 存储桶
      * @param objectName 文件全路径
      * @param stream     文件流
      * @return 对象信息
      */
     public ObjectInfo putObjectForKey(String bucketName, String objectName, InputStream stream) {
-        long fileSize = getFileSize(stream);
         objectName = formatPath(objectName);
+        if (ossProperties.isContentTypeSniff() && !stream.markSupported()) {
+            stream = new BufferedInputStream(stream);
+        }
+        String contentType = ossProperties.isContentTypeSniff() ? Util.getContentType(objectName, stream) : Util.getContentType(objectName);
+        long fileSize;
+        try {
+            fileSize = putStream(bucketName, objectName, contentType, stream);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        objectPut(bucketName, objectName, fileSize);
+        return buildObjectInfo(objectName, new Date(), fileSize);
+    }
+
+    /**
+     * 上传长度已知的文件流
+     *
+     * @param bucketName    存储桶
+     * @param objectName    文件全路径
+     * @param stream        文件流
+     * @param contentLength 文件大小
+     * @return 对象信息
+     */
+    public ObjectInfo putObjectForKey(String bucketName, String objectName, InputStream stream, long contentLength) {
+        objectName = formatPath(objectName);
+        if (ossProperties.isContentTypeSniff() && !stream.markSupported()) {
+            stream = new BufferedInputStream(stream);
+        }
+        String contentType = ossProperties.isContentTypeSniff() ? Util.getContentType(objectName, stream) : Util.getContentType(objectName);
         // 创建异步请求体（length如果为空会报错）
-        BlockingInputStreamAsyncRequestBody body = AsyncRequestBody.forBlockingInputStream(fileSize);
+        BlockingInputStreamAsyncRequestBody body = AsyncRequestBody.forBlockingInputStream(contentLength);
 
         PutObjectRequest putObjectRequest = PutObjectRequest.builder().bucket(bucketName)
                 .key(objectName)
-                .contentType(Util.getContentType(objectName))
+                .contentType(contentType)
                 .build();
         UploadRequest uploadFileRequest = UploadRequest.builder().requestBody(body).putObjectRequest(putObjectRequest).build();
 
@@ -179,15 +355,114 @@ public class PutOperations extends Operations {
 
         // 等待上传完成并获取上传结果
         fileUpload.completionFuture().join();
-        return buildObjectInfo(objectName, new Date(), fileSize);
+        objectPut(bucketName, objectName, contentLength);
+        return buildObjectInfo(objectName, new Date(), contentLength);
     }
 
-    private int getFileSize(InputStream stream) {
+    /**
+     * 流式上传，不足一个分片时直接上传，否则以分片上传逐片发送，失败时终止分片上传
+     *
+     * @return 上传的字节数
+     */
+    private long putStream(String bucketName, String objectName, String contentType, InputStream stream) throws IOException {
+        ReadableByteChannel channel = Channels.newChannel(stream);
+        ByteBuffer first = bufferPool.acquire();
+        boolean eof;
         try {
-            return stream.available();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            eof = fill(channel, first);
+        } catch (IOException | RuntimeException e) {
+            bufferPool.release(first);
+            throw e;
+        }
+        first.flip();
+        if (eof) {
+            long size = first.remaining();
+            try {
+                client.putObject(b -> b.bucket(bucketName).key(objectName).contentType(contentType).contentLength(size),
+                        AsyncRequestBody.fromByteBufferUnsafe(first)).join();
+            } finally {
+                bufferPool.release(first);
+            }
+            return size;
         }
+
+        String uploadId;
+        try {
+            uploadId = client.createMultipartUpload(b -> b.bucket(bucketName).key(objectName).contentType(contentType)).join().uploadId();
+        } catch (RuntimeException e) {
+            bufferPool.release(first);
+            throw e;
+        }
+        long maxSize = (long) MAX_PARTS * first.capacity();
+        StreamPartIterator parts = new StreamPartIterator(channel, first);
+        List<CompletedPart> completedParts = new CopyOnWriteArrayList<>();
+        AtomicInteger partNumber = new AtomicInteger();
+        AtomicLong total = new AtomicLong();
+        try {
+            runBounded(parts, ossProperties.getUpload().getMaxInFlightParts(), buffer -> {
+                int number = partNumber.incrementAndGet();
+                if (number > MAX_PARTS) {
+                    bufferPool.release(buffer);
+                    throw new IllegalArgumentException("流式上传的文件超过 " + maxSize + " 字节上限（" + MAX_PARTS + " 个分片）");
+                }
+                long length = buffer.remaining();
+                total.addAndGet(length);
+                UploadPartRequest request = UploadPartRequest.builder()
+                        .bucket(bucketName)
+                        .key(objectName)
+                        .uploadId(uploadId)
+                        .partNumber(number)
+                        .contentLength(length)
+                        .build();
+                return client.uploadPart(request, AsyncRequestBody.fromByteBufferUnsafe(buffer))
+                        .whenComplete((r, e) -> {
+                            bufferPool.release(buffer);
+                            if (e == null) {
+                                completedParts.add(CompletedPart.builder().partNumber(number).eTag(r.eTag()).build());
+                            }
+                        });
+            });
+            List<CompletedPart> sortedParts = new ArrayList<>(completedParts);
+            sortedParts.sort(Comparator.comparingInt(CompletedPart::partNumber));
+            client.completeMultipartUpload(b -> b
+                    .bucket(bucketName)
+                    .key(objectName)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(sortedParts).build())).join();
+        } catch (RuntimeException e) {
+            parts.close();
+            abortMultipartUpload(bucketName, objectName, uploadId);
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            if (e.getCause() instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) e.getCause();
+            }
+            throw e;
+        }
+        return total.get();
+    }
+
+    private void abortMultipartUpload(String bucketName, String objectName, String uploadId) {
+        try {
+            client.abortMultipartUpload(b -> b.bucket(bucketName).key(objectName).uploadId(uploadId)).join();
+        } catch (RuntimeException e) {
+            log.error("终止分片上传失败【{}】uploadId: {}", objectName, uploadId, e);
+        }
+    }
+
+    /**
+     * 读满缓冲区
+     *
+     * @return 流是否已读完
+     */
+    private static boolean fill(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -213,6 +488,7 @@ public class PutOperations extends Operations {
                 .key(formatPath(path))
                 .build();
         handleRequest(() -> client.putObject(putObjectRequest, AsyncRequestBody.empty()));
+        objectPut(bucketName, putObjectRequest.key(), 0);
         return buildObjectInfo(path, new Date(), 0);
     }
 
@@ -261,8 +537,243 @@ public class PutOperations extends Operations {
 
         // 发起上传目录请求
         transferManager.uploadDirectory(uploadDirectoryRequest).completionFuture().join();
+        prefixChanged(bucketName, path);
     }
 
+    /**
+     * 增量同步文件夹
+     *
+     * @param path          存放路径
+     * @param folder        文件夹
+     * @param deleteRemoved 是否删除本地已不存在的远程文件
+     * @return 同步结果
+     */
+    public BatchResult syncFolder(String path, File folder, boolean deleteRemoved) {
+        return syncFolder(ossProperties.getBucketName(), path, folder, deleteRemoved, false);
+    }
+
+    /**
+     * 增量同步文件夹，只上传新增或修改的文件
+     * <p>
+     * 本地文件按key排序后与远程的有序列举逐一比对，远程列举按需分页，不整体加载到内存，首页列举与本地目录遍历并行。
+     * 大小不同，或本地修改时间晚于远程上传时间的文件视为已修改；
+     * 开启hash校验时大小相同的文件改为比较MD5与ETag（分片上传的对象ETag不是MD5，仍按修改时间比较），
+     * MD5在受 syncParallelism 限制的并发任务中计算
+     *
+     * @param bucketName    存储桶
+     * @param path          存放路径
+     * @param folder        文件夹
+     * @param deleteRemoved 是否删除本地已不存在的远程文件
+     * @param checkHash     是否比较文件hash
+     * @return 同步结果，成功数为上传与删除的文件数之和
+     */
+    public BatchResult syncFolder(String bucketName, String path, File folder, boolean deleteRemoved, boolean checkHash) {
+        if (!folder.exists() || !folder.isDirectory()) {
+            throw new IllegalArgumentException("目录不存在: " + folder.getPath());
+        }
+        long startTime = System.currentTimeMillis();
+        String prefix = formatPath(path);
+        ListObjectsV2Request request = ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .prefix(prefix)
+                .maxKeys(getListPageSize())
+                .build();
+        // 先发出远程首页列举，与遍历本地目录并行
+        ObjectListIterator remote = new ObjectListIterator(client, request).prefetch();
+        TreeMap<String, File> local = listLocal(folder.toPath(), prefix);
+        SyncIterator entries = new SyncIterator(local, remote);
+
+        AtomicLong successCount = new AtomicLong();
+        Map<String, String> failed = new ConcurrentHashMap<>();
+        int parallelism = Math.max(ossProperties.getSyncParallelism(), 1);
+        ExecutorService hashExecutor = checkHash ? Executors.newFixedThreadPool(parallelism) : null;
+        try {
+            runBounded(entries, parallelism, entry -> {
+                CompletableFuture<Boolean> modified = hashExecutor != null && needsHash(entry.file, entry.remote)
+                        ? CompletableFuture.supplyAsync(() -> hashDiffers(entry.file, entry.remote), hashExecutor)
+                        : CompletableFuture.completedFuture(isModified(entry.file, entry.remote));
+                return modified.thenCompose(m -> m ? upload(bucketName, entry.key, entry.file) : CompletableFuture.completedFuture(false))
+                        .handle((uploaded, e) -> {
+                            if (e != null) {
+                                log.error("上传文件失败【{}】", entry.key, e);
+                                failed.put(entry.key, String.valueOf((e.getCause() != null ? e.getCause() : e).getMessage()));
+                            } else if (uploaded) {
+                                successCount.incrementAndGet();
+                            }
+                            return null;
+                        });
+            });
+        } finally {
+            if (hashExecutor != null) {
+                hashExecutor.shutdown();
+            }
+        }
+        long deleteCount = 0;
+        if (deleteRemoved) {
+            BatchResult deleted = deleteKeys(bucketName, entries.removed().iterator());
+            deleteCount = deleted.getSuccessCount();
+            failed.putAll(deleted.getFailed());
+        }
+        prefixChanged(bucketName, prefix);
+
+        BatchResult result = new BatchResult();
+        result.getFailed().putAll(new TreeMap<>(failed));
+        result.setSuccessCount(successCount.get() + deleteCount).setCostTime(System.currentTimeMillis() - startTime);
+        log.info("同步文件夹【{}】->【{}】本地 {} 个，上传 {} 个，删除 {} 个，失败 {} 个，耗时 {}ms", folder.getPath(), prefix,
+                local.size(), successCount.get(), deleteCount, failed.size(), result.getCostTime());
+        return result;
+    }
+
+    /**
+     * 遍历本地目录，与 S3 列举顺序一致，按码点（即UTF-8字节）排序
+     *
+     * @return key到本地文件的映射
+     */
+    static TreeMap<String, File> listLocal(Path root, String prefix) {
+        TreeMap<String, File> local = new TreeMap<>(PutOperations::compareCodePoints);
+        try (Stream<Path> files = Files.walk(root)) {
+            files.filter(Files::isRegularFile).forEach(e -> local.put(prefix + root.relativize(e).toString().replace('\\', '/'), e.toFile()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return local;
+    }
+
+    private CompletableFuture<Boolean> upload(String bucketName, String key, File file) {
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder().bucket(bucketName)
+                .key(key)
+                .contentType(Util.getContentType(key))
+                .build();
+        return transferManager.uploadFile(b -> b.putObjectRequest(putObjectRequest).source(file))
+                .completionFuture()
+                .thenApply(r -> true);
+    }
+
+    private boolean isModified(File file, S3Object object) {
+        return object == null || object.size() != file.length()
+                || file.lastModified() > object.lastModified().toEpochMilli();
+    }
+
+    /**
+     * 大小相同且ETag为MD5时才需要比较hash
+     */
+    private boolean needsHash(File file, S3Object object) {
+        return object != null && object.size() == file.length() && !eTagOf(object).isEmpty() && !eTagOf(object).contains("-");
+    }
+
+    private boolean hashDiffers(File file, S3Object object) {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return !eTagOf(object).equalsIgnoreCase(DigestUtils.md5DigestAsHex(in));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String eTagOf(S3Object object) {
+        return object.eTag() == null ? "" : object.eTag().replace("\"", "");
+    }
+
+    private static int compareCodePoints(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int x = a.codePointAt(i);
+            int y = b.codePointAt(j);
+            if (x != y) {
+                return Integer.compare(x, y);
+            }
+            i += Character.charCount(x);
+            j += Character.charCount(y);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    /**
+     * 本地文件与远程对象的比对项
+     */
+    private static class SyncEntry {
+
+        private final String key;
+
+        private final File file;
+
+        /**
+         * 远程对象，不存在时为null
+         */
+        private final S3Object remote;
+
+        SyncEntry(String key, File file, S3Object remote) {
+            this.key = key;
+            this.file = file;
+            this.remote = remote;
+        }
+    }
+
+    /**
+     * 归并有序的本地文件与远程列举，本地存在的文件作为比对项返回，只在远程存在的文件记录为待删除
+     */
+    private static class SyncIterator implements Iterator<SyncEntry> {
+
+        private final Iterator<Map.Entry<String, File>> local;
+
+        private final Iterator<S3Object> remote;
+
+        private final List<String> removed = new ArrayList<>();
+
+        private S3Object pending;
+
+        SyncIterator(TreeMap<String, File> local, Iterator<S3Object> remote) {
+            this.local = local.entrySet().iterator();
+            this.remote = remote;
+        }
+
+        private S3Object peek() {
+            if (pending == null && remote.hasNext()) {
+                pending = remote.next();
+            }
+            return pending;
+        }
+
+        private void skip(S3Object object) {
+            if (!object.key().endsWith("/")) {
+                removed.add(object.key());
+            }
+            pending = null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return local.hasNext();
+        }
+
+        @Override
+        public SyncEntry next() {
+            Map.Entry<String, File> entry = local.next();
+            S3Object object;
+            while ((object = peek()) != null && compareCodePoints(object.key(), entry.getKey()) < 0) {
+                skip(object);
+            }
+            S3Object match = null;
+            if (object != null && object.key().equals(entry.getKey())) {
+                match = object;
+                pending = null;
+            }
+            return new SyncEntry(entry.getKey(), entry.getValue(), match);
+        }
+
+        /**
+         * 本地已不存在的远程文件，需在比对项全部读完后调用
+         *
+         * @return 待删除的key
+         */
+        List<String> removed() {
+            S3Object object;
+            while ((object = peek()) != null) {
+                skip(object);
+            }
+            return removed;
+        }
+    }
 
     /**
      * 拷贝文件
@@ -291,6 +802,167 @@ public class PutOperations extends Operations {
                 .destinationKey(formatPath(destinationDirectoryKey))
                 .build();
         handleRequest(() -> client.copyObject(copyReq));
+        objectChanged(destinationBucketName, copyReq.destinationKey());
+    }
+
+    /**
+     * 拷贝文件夹
+     *
+     * @param sourcePath      源目录
+     * @param destinationPath 目标目录
+     * @return 拷贝结果
+     */
+    public BatchResult copyFolder(String sourcePath, String destinationPath) {
+        return copyFolder(ossProperties.getBucketName(), sourcePath, ossProperties.getBucketName(), destinationPath);
+    }
+
+    /**
+     * 拷贝文件夹，边列举边在服务端并发拷贝，数据不经过本服务
+     *
+     * @param sourceBucketName      源存储桶
+     * @param sourcePath            源目录
+     * @param destinationBucketName 目标存储桶
+     * @param destinationPath       目标目录
+     * @return 拷贝结果，包含拷贝失败的文件
+     */
+    public BatchResult copyFolder(String sourceBucketName, String sourcePath, String destinationBucketName, String destinationPath) {
+        return transferFolder(sourceBucketName, sourcePath, destinationBucketName, destinationPath, false);
+    }
+
+    /**
+     * 移动文件夹
+     *
+     * @param sourcePath      源目录
+     * @param destinationPath 目标目录
+     * @return 移动结果
+     */
+    public BatchResult moveFolder(String sourcePath, String destinationPath) {
+        return moveFolder(ossProperties.getBucketName(), sourcePath, ossProperties.getBucketName(), destinationPath);
+    }
+
+    /**
+     * 移动文件夹，每拷贝完一批即批量删除该批中拷贝成功的源文件
+     *
+     * @param sourceBucketName      源存储桶
+     * @param sourcePath            源目录
+     * @param destinationBucketName 目标存储桶
+     * @param destinationPath       目标目录
+     * @return 移动结果，包含拷贝或删除失败的文件
+     */
+    public BatchResult moveFolder(String sourceBucketName, String sourcePath, String destinationBucketName, String destinationPath) {
+        return transferFolder(sourceBucketName, sourcePath, destinationBucketName, destinationPath, true);
+    }
+
+    private BatchResult transferFolder(String sourceBucketName, String sourcePath, String destinationBucketName,
+                                       String destinationPath, boolean deleteSource) {
+        long startTime = System.currentTimeMillis();
+        String sourcePrefix = formatPath(sourcePath);
+        String destinationPrefix = formatPath(destinationPath);
+        if (sourceBucketName.equals(destinationBucketName) && destinationPrefix.startsWith(sourcePrefix)) {
+            throw new IllegalArgumentException("目标目录不能位于源目录中");
+        }
+        ListObjectsV2Request request = ListObjectsV2Request.builder()
+                .bucket(sourceBucketName)
+                .prefix(sourcePrefix)
+                .maxKeys(getListPageSize())
+                .build();
+        Iterator<List<S3Object>> batches = partition(new ObjectListIterator(client, request), MAX_BATCH_SIZE);
+        AtomicLong successCount = new AtomicLong();
+        Map<String, String> failed = new ConcurrentHashMap<>();
+        while (batches.hasNext()) {
+            Queue<String> copied = new ConcurrentLinkedQueue<>();
+            runBounded(batches.next().iterator(), ossProperties.getCopyParallelism(), object -> {
+                String destinationKey = destinationPrefix + object.key().substring(sourcePrefix.length());
+                return copyObject(sourceBucketName, object.key(), object.size(), destinationBucketName, destinationKey)
+                        .handle((r, e) -> {
+                            if (e != null) {
+                                log.error("拷贝文件失败【{}】", object.key(), e);
+                                failed.put(object.key(), String.valueOf((e.getCause() != null ? e.getCause() : e).getMessage()));
+                            } else {
+                                copied.add(object.key());
+                            }
+                            return null;
+                        });
+            });
+            if (!deleteSource) {
+                successCount.addAndGet(copied.size());
+            } else if (!copied.isEmpty()) {
+                BatchResult deleted = deleteKeys(sourceBucketName, copied.iterator());
+                successCount.addAndGet(deleted.getSuccessCount());
+                failed.putAll(deleted.getFailed());
+            }
+        }
+        prefixChanged(destinationBucketName, destinationPrefix);
+        if (deleteSource) {
+            prefixChanged(sourceBucketName, sourcePrefix);
+        }
+        BatchResult result = new BatchResult();
+        result.getFailed().putAll(new TreeMap<>(failed));
+        result.setSuccessCount(successCount.get()).setCostTime(System.currentTimeMillis() - startTime);
+        log.info("{}文件夹【{}】->【{}】成功 {} 个，失败 {} 个，耗时 {}ms", deleteSource ? "移动" : "拷贝", sourcePrefix,
+                destinationPrefix, result.getSuccessCount(), failed.size(), result.getCostTime());
+        return result;
+    }
+
+    /**
+     * 服务端拷贝单个对象，超过5GB时分片拷贝
+     */
+    private CompletableFuture<Void> copyObject(String sourceBucketName, String sourceKey, long size,
+                                               String destinationBucketName, String destinationKey) {
+        if (size <= MAX_COPY_SIZE) {
+            return client.copyObject(b -> b
+                    .sourceBucket(sourceBucketName)
+                    .sourceKey(sourceKey)
+                    .destinationBucket(destinationBucketName)
+                    .destinationKey(destinationKey)).thenApply(r -> null);
+        }
+        return multipartCopy(sourceBucketName, sourceKey, size, destinationBucketName, destinationKey);
+    }
+
+    /**
+     * 分片拷贝，同时执行的 UploadPartCopy 请求数不超过 copyPartParallelism，失败时终止分片上传后再以原异常结束
+     */
+    private CompletableFuture<Void> multipartCopy(String sourceBucketName, String sourceKey, long size,
+                                                  String destinationBucketName, String destinationKey) {
+        return client.headObject(b -> b.bucket(sourceBucketName).key(sourceKey))
+                .thenCompose(head -> client.createMultipartUpload(b -> b
+                        .bucket(destinationBucketName)
+                        .key(destinationKey)
+                        .contentType(head.contentType())
+                        .metadata(head.metadata())))
+                .thenCompose(created -> {
+                    String uploadId = created.uploadId();
+                    long partSize = Math.max(Math.max(ossProperties.getUpload().getPartSize(), MIN_PART_SIZE), (size + MAX_PARTS - 1) / MAX_PARTS);
+                    int partCount = (int) ((size + partSize - 1) / partSize);
+                    CompletedPart[] parts = new CompletedPart[partCount];
+                    return runBoundedAsync(IntStream.range(0, partCount).iterator(), ossProperties.getCopyPartParallelism(), i -> {
+                        int partNumber = i + 1;
+                        long start = i * partSize;
+                        ByteRange range = new ByteRange(start, Math.min(start + partSize, size) - 1);
+                        return client.uploadPartCopy(b -> b
+                                        .sourceBucket(sourceBucketName)
+                                        .sourceKey(sourceKey)
+                                        .destinationBucket(destinationBucketName)
+                                        .destinationKey(destinationKey)
+                                        .uploadId(uploadId)
+                                        .partNumber(partNumber)
+                                        .copySourceRange(range.toHeader()))
+                                .thenAccept(r -> parts[i] = CompletedPart.builder().partNumber(partNumber).eTag(r.copyPartResult().eTag()).build());
+                    }).thenCompose(v -> client.completeMultipartUpload(b -> b
+                            .bucket(destinationBucketName)
+                            .key(destinationKey)
+                            .uploadId(uploadId)
+                            .multipartUpload(m -> m.parts(parts))
+                    )).handle((r, e) -> e == null
+                            ? CompletableFuture.<Void>completedFuture(null)
+                            : client.abortMultipartUpload(b -> b.bucket(destinationBucketName).key(destinationKey).uploadId(uploadId))
+                            .<Void>handle((a, t) -> {
+                                if (t != null) {
+                                    log.error("终止分片拷贝失败【{}】uploadId: {}", destinationKey, uploadId, t);
+                                }
+                                throw toCompletionException(e);
+                            })).thenCompose(Function.identity());
+                });
     }
 
     /**
@@ -301,10 +973,148 @@ public class PutOperations extends Operations {
     public String initTask(ChunkTask chunkTask) {
         String objectName = formatPath(chunkTask.getPath()) + chunkTask.getFilename();
         // 初始化分片上传任务
+        // 声明的hash在合并后校验通过才写入元数据
         CreateMultipartUploadResponse createMultipartUploadResponse = client.createMultipartUpload(b -> b
                 .bucket(ossProperties.getBucketName())
                 .key(objectName)).join();
-        return createMultipartUploadResponse.uploadId();
+        String uploadId = createMultipartUploadResponse.uploadId();
+        if (uploadSessionStore != null) {
+            uploadSessionStore.create(new ChunkProcess(uploadId, objectName, new ArrayList<>(), chunkTask.getHash()));
+        }
+        return uploadId;
+    }
+
+    /**
+     * 秒传，内容相同的对象已存在时不再上传
+     *
+     * @param chunkTask 分片任务，需包含文件内容MD5
+     * @return 对象信息，需要上传时返回null
+     */
+    public ObjectInfo instantUpload(ChunkTask chunkTask) {
+        return instantUpload(ossProperties.getBucketName(), formatPath(chunkTask.getPath()) + chunkTask.getFilename(), chunkTask.getHash());
+    }
+
+    /**
+     * 秒传，目标位置已是相同内容时直接返回，hash索引中存在相同内容的对象时服务端拷贝
+     * <p>
+     * 只信任经 merge 校验后写入的hash元数据（需开启 oss.upload.hash-verify），客户端声明的hash不会直接生效
+     *
+     * @param bucketName 存储桶
+     * @param objectName 文件全路径
+     * @param hash       文件内容MD5（十六进制）
+     * @return 对象信息，需要上传时返回null
+     */
+    public ObjectInfo instantUpload(String bucketName, String objectName, String hash) {
+        if (Util.isBlank(hash)) {
+            return null;
+        }
+        hash = hash.toLowerCase(Locale.ROOT);
+        String key = formatPath(objectName);
+        HeadObjectResponse target = headObject(bucketName, key);
+        if (target != null && hash.equals(target.metadata().get(HASH_METADATA))) {
+            if (hashIndex != null) {
+                hashIndex.put(bucketName, hash, key);
+            }
+            return buildObjectInfo(key, target);
+        }
+        String sourceKey = hashIndex == null ? null : hashIndex.get(bucketName, hash);
+        if (sourceKey == null || sourceKey.equals(key)) {
+            return null;
+        }
+        HeadObjectResponse source = headObject(bucketName, sourceKey);
+        if (source == null || !hash.equals(source.metadata().get(HASH_METADATA))) {
+            // 源对象已删除或被覆盖
+            hashIndex.remove(bucketName, hash);
+            return null;
+        }
+        // 拷贝时保留源对象的元数据，包括hash
+        client.copyObject(b -> b
+                .sourceBucket(bucketName)
+                .sourceKey(sourceKey)
+                .destinationBucket(bucketName)
+                .destinationKey(key)).join();
+        objectPut(bucketName, key, source.contentLength());
+        log.debug("秒传【{}】拷贝自【{}】", key, sourceKey);
+        return buildObjectInfo(key, new Date(), source.contentLength());
+    }
+
+    private HeadObjectResponse headObject(String bucketName, String objectName) {
+        CompletableFuture<HeadObjectResponse> future = client.headObject(b -> b.bucket(bucketName).key(objectName));
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (isNotFound(future)) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 校验合并后对象的MD5与声明的hash一致后，写入hash元数据并加入索引
+     * <p>
+     * 异步读取整个对象计算MD5，不阻塞合并请求；元数据通过以 ETag 为条件的原地拷贝写入，
+     * 保留原有的用户元数据、内容相关请求头和存储类型，校验期间对象被覆盖时放弃。超过单次拷贝上限的对象不参与秒传
+     *
+     * @param bucketName 存储桶
+     * @param objectName 对象key
+     * @param hash       声明的MD5
+     * @return 是否校验通过
+     */
+    private CompletableFuture<Boolean> verifyHash(String bucketName, String objectName, String hash) {
+        String expected = hash.toLowerCase(Locale.ROOT);
+        return client.headObject(b -> b.bucket(bucketName).key(objectName)).thenCompose(head -> {
+            if (head.contentLength() > MAX_COPY_SIZE) {
+                log.debug("文件【{}】超过单次拷贝上限，不参与秒传", objectName);
+                return CompletableFuture.completedFuture(false);
+            }
+            MessageDigest digest = md5();
+            return client.getObject(b -> b.bucket(bucketName).key(objectName).ifMatch(head.eTag()), AsyncResponseTransformer.toPublisher())
+                    .thenCompose(publisher -> publisher.subscribe(digest::update))
+                    .thenCompose(v -> {
+                        StringBuilder actual = new StringBuilder();
+                        for (byte b : digest.digest()) {
+                            actual.append(String.format("%02x", b));
+                        }
+                        if (!actual.toString().equals(expected)) {
+                            log.warn("文件【{}】的MD5 {} 与声明的hash {} 不一致，不参与秒传", objectName, actual, expected);
+                            return CompletableFuture.completedFuture(false);
+                        }
+                        // REPLACE 会清空未显式指定的元数据，需从原对象带上
+                        Map<String, String> metadata = new HashMap<>(head.metadata());
+                        metadata.put(HASH_METADATA, expected);
+                        return client.copyObject(b -> b
+                                        .sourceBucket(bucketName)
+                                        .sourceKey(objectName)
+                                        .destinationBucket(bucketName)
+                                        .destinationKey(objectName)
+                                        .copySourceIfMatch(head.eTag())
+                                        .metadataDirective(MetadataDirective.REPLACE)
+                                        .metadata(metadata)
+                                        .contentType(head.contentType())
+                                        .contentDisposition(head.contentDisposition())
+                                        .contentEncoding(head.contentEncoding())
+                                        .contentLanguage(head.contentLanguage())
+                                        .cacheControl(head.cacheControl())
+                                        .expires(head.expires())
+                                        .storageClass(head.storageClassAsString()))
+                                .thenApply(r -> {
+                                    objectChanged(bucketName, objectName);
+                                    if (hashIndex != null) {
+                                        hashIndex.put(bucketName, expected, objectName);
+                                    }
+                                    return true;
+                                });
+                    });
+        });
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     /**
@@ -323,15 +1133,28 @@ public class PutOperations extends Operations {
                 .contentLength(chunk.getFile().getSize())
                 .build();
 
+        ByteBuffer[] buffers = null;
         try {
-            ByteBuffer byteBuffer = ByteBuffer.wrap(chunk.getFile().getBytes());
-            AsyncRequestBody body = AsyncRequestBody.fromByteBuffer(byteBuffer);
+            // 读入池化的堆外缓冲区，大于单个缓冲区的分片依次填入多个缓冲区，避免分配大数组
+            buffers = bufferPool.acquire(chunk.getFile().getSize());
+            try (ReadableByteChannel channel = Channels.newChannel(chunk.getFile().getInputStream())) {
+                for (ByteBuffer buffer : buffers) {
+                    fill(channel, buffer);
+                    buffer.flip();
+                }
+            }
+            AsyncRequestBody body = AsyncRequestBody.fromByteBuffersUnsafe(buffers);
             String etag = client.uploadPart(uploadRequest, body).join().eTag();
             target.setEtag(etag.replace("\"", ""));
             target.setPartNumber(chunk.getChunkNumber());
+            if (uploadSessionStore != null) {
+                uploadSessionStore.addPart(chunk.getUploadId(), new ChunkProcess.ChunkPart(target.getEtag(), chunk.getChunkNumber()));
+            }
         } catch (Exception e) {
             log.error("文件【{}】上传分片【{}】失败", chunk.getFilename(), chunk.getChunkNumber(), e);
             throw new RuntimeException("上传分片失败", e);
+        } finally {
+            bufferPool.release(buffers);
         }
         return target;
     }
@@ -344,19 +1167,44 @@ public class PutOperations extends Operations {
     public ObjectInfo merge(ChunkMerge chunkMerge) {
         String objectName = formatPath(chunkMerge.getPath()) + chunkMerge.getFilename();
 
-
-        List<CompletedPart> completedParts = chunkMerge.getChunkTargetList().stream().map(part -> CompletedPart.builder()
-                        .partNumber(part.getPartNumber())
-                        .eTag(part.getEtag())
-                        .build())
-                .sorted(Comparator.comparingInt(CompletedPart::partNumber))
-                .collect(Collectors.toList());
+        ChunkProcess process = uploadSessionStore == null ? null : uploadSessionStore.get(chunkMerge.getUploadId());
+        List<CompletedPart> completedParts;
+        if (chunkMerge.getChunkTargetList() == null || chunkMerge.getChunkTargetList().isEmpty()) {
+            // 未提交分片结果时使用已记录的上传进度
+            if (process == null) {
+                throw new IllegalArgumentException("上传任务不存在: " + chunkMerge.getUploadId());
+            }
+            completedParts = process.getChunkList().stream().map(part -> CompletedPart.builder()
+                            .partNumber(part.getChunkNumber())
+                            .eTag(part.getLocation())
+                            .build())
+                    .sorted(Comparator.comparingInt(CompletedPart::partNumber))
+                    .collect(Collectors.toList());
+        } else {
+            completedParts = chunkMerge.getChunkTargetList().stream().map(part -> CompletedPart.builder()
+                            .partNumber(part.getPartNumber())
+                            .eTag(part.getEtag())
+                            .build())
+                    .sorted(Comparator.comparingInt(CompletedPart::partNumber))
+                    .collect(Collectors.toList());
+        }
 
         client.completeMultipartUpload(b -> b
                 .bucket(ossProperties.getBucketName())
                 .key(objectName)
                 .uploadId(chunkMerge.getUploadId())
                 .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())).join();
+        objectChanged(ossProperties.getBucketName(), objectName);
+        if (process != null) {
+            uploadSessionStore.remove(chunkMerge.getUploadId());
+            if (ossProperties.getUpload().isHashVerify() && !Util.isBlank(process.getHash())) {
+                verifyHash(ossProperties.getBucketName(), objectName, process.getHash()).whenComplete((r, e) -> {
+                    if (e != null) {
+                        log.warn("文件【{}】hash校验失败", objectName, e);
+                    }
+                });
+            }
+        }
 
         return ObjectInfo.builder()
                 .uri(objectName)
@@ -365,6 +1213,23 @@ public class PutOperations extends Operations {
                 .build();
     }
 
+    /**
+     * 获取分片上传进度
+     *
+     * @param uploadId 上传任务id
+     * @return 上传进度，未记录或已过期时为null
+     */
+    public ChunkProcess getChunkProcess(String uploadId) {
+        return uploadSessionStore == null ? null : uploadSessionStore.get(uploadId);
+    }
+
+    /**
+     * @return 上传缓冲区池，可用于监控命中率与堆外内存占用
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
     public List<Part> listParts(String bucketName, String objectName, String uploadId) {
         ListPartsRequest request = ListPartsRequest.builder()
                 .bucket(bucketName)
@@ -376,4 +1241,64 @@ public class PutOperations extends Operations {
         return response.parts();
     }
 
+    /**
+     * 从流中依次读取分片，每次读满一个缓冲区
+     */
+    private class StreamPartIterator implements Iterator<ByteBuffer> {
+
+        private final ReadableByteChannel channel;
+
+        private ByteBuffer next;
+
+        private boolean eof;
+
+        StreamPartIterator(ReadableByteChannel channel, ByteBuffer first) {
+            this.channel = channel;
+            this.next = first;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !eof) {
+                ByteBuffer buffer;
+                try {
+                    buffer = bufferPool.acquire();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                try {
+                    eof = fill(channel, buffer);
+                } catch (IOException e) {
+                    bufferPool.release(buffer);
+                    throw new UncheckedIOException(e);
+                }
+                buffer.flip();
+                if (buffer.hasRemaining()) {
+                    next = buffer;
+                } else {
+                    bufferPool.release(buffer);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public ByteBuffer next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ByteBuffer buffer = next;
+            next = null;
+            return buffer;
+        }
+
+        /**
+         * 归还尚未上传的缓冲区
+         */
+        void close() {
+            bufferPool.release(next);
+            next = null;
+        }
+    }
+
 }
@@ -1,27 +1,43 @@
 package com.wiblog.oss.service;
 
+import com.wiblog.oss.bean.BatchResult;
 import com.wiblog.oss.bean.ObjectInfo;
+import com.wiblog.oss.bean.ObjectPage;
 import com.wiblog.oss.bean.ObjectTreeNode;
 import com.wiblog.oss.bean.OssProperties;
+import com.wiblog.oss.cache.BlockCache;
+import com.wiblog.oss.util.ByteRange;
+import com.wiblog.oss.util.PublisherInputStream;
 import com.wiblog.oss.util.Util;
 import lombok.extern.slf4j.Slf4j;
 import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.async.ResponsePublisher;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
 import software.amazon.awssdk.services.s3.paginators.ListObjectsV2Iterable;
-import software.amazon.awssdk.services.s3.paginators.ListObjectsV2Publisher;
 import software.amazon.awssdk.transfer.s3.S3TransferManager;
+import software.amazon.awssdk.transfer.s3.model.CompletedDirectoryDownload;
+import software.amazon.awssdk.transfer.s3.model.DownloadDirectoryRequest;
+import software.amazon.awssdk.transfer.s3.model.FailedFileDownload;
+import software.amazon.awssdk.transfer.s3.progress.TransferListener;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.*;
 import java.net.URLDecoder;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * 查询操作类
@@ -32,8 +48,18 @@ import java.util.stream.Collectors;
 @Slf4j
 public class QueryOperations extends Operations {
 
+    /**
+     * 分块读缓存，未启用时为null
+     */
+    private final BlockCache blockCache;
+
     public QueryOperations(OssProperties ossProperties, S3AsyncClient client, S3TransferManager transferManager) {
-        super(ossProperties, client, transferManager);
+        this(ossProperties, client, transferManager, new OssDependencies());
+    }
+
+    public QueryOperations(OssProperties ossProperties, S3AsyncClient client, S3TransferManager transferManager, OssDependencies dependencies) {
+        super(ossProperties, client, transferManager, dependencies);
+        this.blockCache = dependencies.getBlockCache();
     }
 
     /**
@@ -139,25 +165,122 @@ public class QueryOperations extends Operations {
      * @return Object列表
      */
     public List<S3Object> listObject(String bucketName, String path, String keyword) {
-        List<S3Object> list = new ArrayList<>();
-        path = Util.formatPath(path);
-        // 列出存储桶中的对象
-        ListObjectsV2Request request = ListObjectsV2Request
-                .builder()
+        return streamObject(bucketName, path, keyword).collect(Collectors.toList());
+    }
+
+    /**
+     * 根据文件前置分页查询文件列表，只拉取到满足 offset + limit 为止
+     *
+     * @param bucketName 桶名称
+     * @param path       文件目录
+     * @param keyword    关键字
+     * @param offset     跳过的数量
+     * @param limit      返回的最大数量
+     * @return Object列表
+     */
+    public List<S3Object> listObject(String bucketName, String path, String keyword, long offset, long limit) {
+        return streamObject(bucketName, path, keyword).skip(offset).limit(limit).collect(Collectors.toList());
+    }
+
+    /**
+     * 根据文件前置流式查询文件
+     *
+     * @param path 文件目录
+     * @return Object流
+     */
+    public Stream<S3Object> streamObject(String path) {
+        return streamObject(ossProperties.getBucketName(), path, null);
+    }
+
+    /**
+     * 根据文件前置流式查询文件，按需逐页拉取，提前结束时不再请求后续页；启用本地key索引时由索引回答
+     *
+     * @param bucketName 桶名称
+     * @param path       文件目录
+     * @param keyword    关键字
+     * @return Object流
+     */
+    public Stream<S3Object> streamObject(String bucketName, String path, String keyword) {
+        String prefix = Util.formatPath(path);
+        if (keyIndex != null) {
+            List<S3Object> indexed = keyIndex.search(bucketName, prefix, keyword, e -> listIterator(bucketName, e));
+            if (indexed != null) {
+                return indexed.stream();
+            }
+        }
+        Stream<S3Object> stream = StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                listIterator(bucketName, prefix), Spliterator.ORDERED | Spliterator.NONNULL), false);
+        return Util.isBlank(keyword) ? stream : stream.filter(e -> e.key().contains(keyword));
+    }
+
+    private Iterator<S3Object> listIterator(String bucketName, String prefix) {
+        ListObjectsV2Request request = ListObjectsV2Request.builder()
                 .bucket(bucketName)
-                .maxKeys(100)
-                .prefix(path)
+                .maxKeys(getListPageSize())
+                .prefix(prefix)
                 .build();
+        return new ObjectListIterator(client, request);
+    }
 
-        ListObjectsV2Publisher publisher = client.listObjectsV2Paginator(request);
-        publisher.subscribe(response -> {
-            if (Util.isBlank(keyword)) {
-                list.addAll(response.contents());
-            } else {
-                list.addAll(response.contents().stream().filter(e -> e.key().contains(keyword)).collect(Collectors.toList()));
-            }
+    /**
+     * 按子目录分片并发列举文件，适用于超大目录的全量扫描
+     *
+     * @param bucketName 桶名称
+     * @param path       文件目录
+     * @return 按key排序的Object列表
+     */
+    public List<S3Object> listObjectParallel(String bucketName, String path) {
+        return listObjectParallel(bucketName, path, ossProperties.getListParallelism());
+    }
+
+    /**
+     * 按子目录分片并发列举文件
+     * <p>
+     * 先通过分隔符列举出下一级子目录，再以有限并发分别列举每个子目录，最后按key顺序合并
+     *
+     * @param bucketName  桶名称
+     * @param path        文件目录
+     * @param parallelism 最大并发分片数
+     * @return 按key排序的Object列表
+     */
+    public List<S3Object> listObjectParallel(String bucketName, String path, int parallelism) {
+        String prefix = Util.formatPath(path);
+        List<S3Object> files = new ArrayList<>();
+        List<String> shardPrefixes = new ArrayList<>();
+        ListObjectsV2Request request = ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .prefix(prefix)
+                .maxKeys(getListPageSize())
+                .delimiter("/")
+                .build();
+        client.listObjectsV2Paginator(request).subscribe(response -> {
+            files.addAll(response.contents());
+            response.commonPrefixes().forEach(e -> shardPrefixes.add(e.prefix()));
         }).join();
-        return list;
+
+        List<List<S3Object>> shards = new ArrayList<>(shardPrefixes.size());
+        for (int i = 0; i < shardPrefixes.size(); i++) {
+            shards.add(new ArrayList<>());
+        }
+        Iterator<Integer> indexes = IntStream.range(0, shardPrefixes.size()).iterator();
+        runBounded(indexes, parallelism, i -> {
+            ListObjectsV2Request shardRequest = request.toBuilder().prefix(shardPrefixes.get(i)).delimiter(null).build();
+            List<S3Object> shard = shards.get(i);
+            return client.listObjectsV2Paginator(shardRequest).subscribe(response -> shard.addAll(response.contents()));
+        });
+
+        // 每个分片内的key都以分片前缀开头，可整体按前缀与当前层级的文件归并
+        List<S3Object> result = new ArrayList<>(files.size() + shards.stream().mapToInt(List::size).sum());
+        int fileIndex = 0;
+        for (int i = 0; i < shardPrefixes.size(); i++) {
+            String shardPrefix = shardPrefixes.get(i);
+            while (fileIndex < files.size() && files.get(fileIndex).key().compareTo(shardPrefix) < 0) {
+                result.add(files.get(fileIndex++));
+            }
+            result.addAll(shards.get(i));
+        }
+        result.addAll(files.subList(fileIndex, files.size()));
+        return result;
     }
 
     /**
@@ -178,37 +301,68 @@ public class QueryOperations extends Operations {
      * @return List
      */
     public List<ObjectTreeNode> listNextLevel(String bucketName, String path) {
-        List<ObjectTreeNode> resultList = new ArrayList<>();
-        path = Util.formatPath(path);
-        // 列出存储桶中的对象
-        ListObjectsV2Request request = ListObjectsV2Request.builder()
-                .bucket(bucketName)
-                .prefix(path)
-                .maxKeys(100)
-                .delimiter("/")
-                .build();
+        return streamNextLevel(bucketName, path).collect(Collectors.toList());
+    }
 
-        ListObjectsV2Publisher publisher = client.listObjectsV2Paginator(request);
-        Set<String> keySet = new HashSet<>(64);
-        publisher.subscribe(response -> {
-            List<S3Object> objects = response.contents();
-            if (!objects.isEmpty()) {
-                List<ObjectTreeNode> files = objects.stream().filter(e -> e.size() > 0).map(this::buildTreeNode).collect(Collectors.toList());
-                resultList.addAll(files);
+    /**
+     * 分页获取下一层级目录树，每页文件在前、文件夹在后
+     *
+     * @param path     路径
+     * @param pageSize 每页数量，限制在1~1000之间
+     * @param token    页令牌，为空时从第一页开始
+     * @return 当前页节点及下一页令牌
+     */
+    public ObjectPage<ObjectTreeNode> listNextLevel(String path, int pageSize, String token) {
+        return listNextLevel(ossProperties.getBucketName(), path, pageSize, token);
+    }
+
+    /**
+     * 分页获取下一层级目录树，每页文件在前、文件夹在后
+     *
+     * @param bucketName 桶名称
+     * @param path       路径
+     * @param pageSize   每页数量，限制在1~1000之间
+     * @param token      页令牌，为空时从第一页开始
+     * @return 当前页节点及下一页令牌
+     */
+    public ObjectPage<ObjectTreeNode> listNextLevel(String bucketName, String path, int pageSize, String token) {
+        return listLevelPage(bucketName, Util.formatPath(path), pageSize, token).join();
+    }
+
+    /**
+     * 流式获取下一层级目录树，按需逐页拉取，消费当前页时预取下一页
+     *
+     * @param bucketName 桶名称
+     * @param path       路径
+     * @return 节点流
+     */
+    public Stream<ObjectTreeNode> streamNextLevel(String bucketName, String path) {
+        String prefix = Util.formatPath(path);
+        Iterator<ObjectTreeNode> iterator = new Iterator<ObjectTreeNode>() {
+
+            private Iterator<ObjectTreeNode> page = Collections.emptyIterator();
+
+            private CompletableFuture<ObjectPage<ObjectTreeNode>> next = listLevelPage(bucketName, prefix, getListPageSize(), null);
+
+            @Override
+            public boolean hasNext() {
+                while (!page.hasNext() && next != null) {
+                    ObjectPage<ObjectTreeNode> current = next.join();
+                    page = current.getItems().iterator();
+                    next = current.hasMore() ? listLevelPage(bucketName, prefix, getListPageSize(), current.getNextToken()) : null;
+                }
+                return page.hasNext();
             }
-            List<CommonPrefix> commonPrefixes = response.commonPrefixes();
-            if (!commonPrefixes.isEmpty()) {
-                List<ObjectTreeNode> folders = commonPrefixes.stream()
-                        .map(CommonPrefix::prefix)
-                        .distinct()
-                        .filter(e -> !keySet.contains(e))
-                        .peek(keySet::add)
-                        .map(this::buildTreeNode)
-                        .collect(Collectors.toList());
-                resultList.addAll(folders);
+
+            @Override
+            public ObjectTreeNode next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
             }
-        }).join();
-        return resultList;
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
     }
 
     /**
@@ -219,6 +373,9 @@ public class QueryOperations extends Operations {
      * @return ObjectInfo对象信息
      */
     public boolean checkExist(String bucketName, String objectName) {
+        if (metadataCache != null) {
+            return getObjectInfo(bucketName, objectName) != null;
+        }
         HeadObjectRequest request = HeadObjectRequest.builder().bucket(bucketName).key(objectName).build();
         try {
             client.headObject(request).join();
@@ -257,12 +414,23 @@ public class QueryOperations extends Operations {
      * @return ObjectInfo对象信息
      */
     public ObjectInfo getObjectInfo(String bucketName, String objectName) {
-        HeadObjectRequest headObjectRequest = HeadObjectRequest.builder()
-                .bucket(bucketName)
-                .key(objectName)
-                .build();
-        HeadObjectResponse response = handleRequest(() -> client.headObject(headObjectRequest));
-        return buildObjectInfo(objectName, response);
+        try {
+            return fetchObjectInfo(bucketName, objectName);
+        } catch (CompletionException e) {
+            log.error("OSS Error: 获取文件信息失败【{}】", objectName, e.getCause() != null ? e.getCause() : e);
+            return null;
+        }
+    }
+
+    /**
+     * 获取文件信息，对象不存在时返回null，其他失败以 CompletionException 抛出
+     *
+     * @param bucketName 桶名称
+     * @param objectName 文件全路径
+     * @return ObjectInfo对象信息
+     */
+    private ObjectInfo fetchObjectInfo(String bucketName, String objectName) {
+        return headObjectInfo(bucketName, objectName).join();
     }
 
     /**
@@ -306,23 +474,18 @@ public class QueryOperations extends Operations {
     }
 
     /**
-     * 获取文件流
+     * 获取文件流，数据边读边下载，使用完毕后需关闭
      *
      * @param bucketName 存储桶
      * @param objectName 文件全路径
      * @return InputStream 文件流
      */
     public InputStream getInputStream(String bucketName, String objectName) {
-        return handleRequest(() -> client.getObject(getObjectRequest(bucketName, objectName), AsyncResponseTransformer.toBytes()).thenApply(responseBytes -> {
-            ByteBuffer buffer = responseBytes.asByteBuffer();
-            byte[] bytesArray = new byte[buffer.remaining()];
-            buffer.get(bytesArray);
-            return new ByteArrayInputStream(bytesArray);
-        }));
+        return handleRequest(() -> getStream(getObjectRequest(bucketName, objectName)));
     }
 
     /**
-     * 获取文件流
+     * 获取文件流，数据边读边下载，使用完毕后需关闭
      *
      * @param bucketName 存储桶
      * @param objectName 文件全路径
@@ -330,15 +493,56 @@ public class QueryOperations extends Operations {
      * @return InputStream 文件流
      */
     public InputStream getInputStream(String bucketName, String objectName, String range) {
+        if (blockCache != null) {
+            InputStream inputStream = getCachedInputStream(bucketName, Util.formatPath(objectName), range);
+            if (inputStream != null) {
+                return inputStream;
+            }
+        }
         GetObjectRequest request = GetObjectRequest.builder().bucket(bucketName).key(Util.formatPath(objectName)).range(range).build();
-        return handleRequest(() -> client.getObject(request, AsyncResponseTransformer.toBytes()).thenApply(responseBytes -> {
-            ByteBuffer buffer = responseBytes.asByteBuffer();
-            byte[] bytesArray = new byte[buffer.remaining()];
-            buffer.get(bytesArray);
-            return new ByteArrayInputStream(bytesArray);
-        }));
+        return handleRequest(() -> getStream(request));
     }
 
+    /**
+     * 通过分块读缓存获取分段，多段请求、分段过大或回源失败时返回null
+     * <p>
+     * 每次读取先以 HEAD 获取最新ETag定位缓存块，回源时附带 If-Match，不会把新旧内容混在一起。
+     * 启用元数据缓存时ETag来自元数据缓存，省去HEAD，但对象被其他客户端覆盖后，
+     * 在元数据缓存过期前仍可能命中旧块；需要强一致时不要同时启用两者
+     *
+     * @param bucketName 存储桶
+     * @param key        对象key
+     * @param range      分段
+     * @return InputStream 文件流
+     */
+    private InputStream getCachedInputStream(String bucketName, String key, String range) {
+        ObjectInfo objectInfo = getObjectInfo(bucketName, key);
+        if (objectInfo == null || objectInfo.getEtag() == null) {
+            return null;
+        }
+        List<ByteRange> ranges = ByteRange.parse(range, objectInfo.getSize());
+        if (ranges == null || ranges.size() != 1) {
+            return null;
+        }
+        try {
+            return blockCache.read(bucketName, key, objectInfo.getEtag(), objectInfo.getSize(), ranges.get(0), block -> {
+                GetObjectRequest request = GetObjectRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .range(block.toHeader())
+                        .ifMatch(objectInfo.getEtag())
+                        .build();
+                return client.getObject(request, AsyncResponseTransformer.toBytes()).join().asByteBuffer();
+            });
+        } catch (Exception e) {
+            log.warn("读取缓存块失败，直接读取对象【{}】", key, e);
+            // ETag 可能已过期，下次读取重新获取
+            if (metadataCache != null) {
+                metadataCache.invalidate(bucketName, key);
+            }
+            return null;
+        }
+    }
 
     /**
      * 下载文件
@@ -358,6 +562,7 @@ public class QueryOperations extends Operations {
      * @param objectName    文件全路径
      * @param localFilePath 存放位置
      * @return File
+     * @throws CompletionException 分段下载失败，已写入的文件会被删除
      */
     public File getFile(String bucketName, String objectName, String localFilePath) {
         File outputFile = new File(localFilePath);
@@ -372,13 +577,100 @@ public class QueryOperations extends Operations {
             localFilePath = Util.formatPath(localFilePath);
             outputFile = new File(localFilePath + filename);
         }
+        if (ossProperties.getDownload().getParallelism() > 1) {
+            getFileInParallel(bucketName, Util.formatPath(objectName), outputFile);
+            return outputFile;
+        }
         File finalOutputFile = outputFile;
         handleRequest(() -> client.getObject(getObjectRequest(bucketName, objectName), AsyncResponseTransformer.toFile(finalOutputFile)));
         return outputFile;
     }
 
-    private GetObjectRequest getObjectRequest(String bucketName, String objectName) {
-        return GetObjectRequest.builder().bucket(bucketName).key(Util.formatPath(objectName)).build();
+    /**
+     * 分段并发下载，各分段按偏移量直接写入预分配的文件
+     * <p>
+     * 首个请求读取前 parallelThreshold 字节，并从其 Content-Range 得到对象大小，不额外发送 HEAD；
+     * 对象小于该值时只有这一个请求，否则其余部分按 partSize 分段并以首个响应的 ETag 作 If-Match 并发下载
+     *
+     * @param bucketName 存储桶
+     * @param key        对象key
+     * @param outputFile 存放位置
+     */
+    private void getFileInParallel(String bucketName, String key, File outputFile) {
+        OssProperties.Download download = ossProperties.getDownload();
+        long threshold = Math.max(download.getParallelThreshold(), 1);
+        CompletableFuture<ResponsePublisher<GetObjectResponse>> first = client.getObject(b -> b
+                .bucket(bucketName)
+                .key(key)
+                .range(new ByteRange(0, threshold - 1).toHeader()), AsyncResponseTransformer.toPublisher());
+        ResponsePublisher<GetObjectResponse> publisher;
+        try {
+            publisher = first.join();
+        } catch (CompletionException e) {
+            if (isNotFound(first)) {
+                log.debug("OSS Error：文件不存在");
+                return;
+            }
+            if (e.getCause() instanceof S3Exception && ((S3Exception) e.getCause()).statusCode() == 416) {
+                // 空对象不支持 Range 请求
+                handleRequest(() -> client.getObject(getObjectRequest(bucketName, key), AsyncResponseTransformer.toFile(outputFile)));
+                return;
+            }
+            throw e;
+        }
+        GetObjectResponse response = publisher.response();
+        String contentRange = response.contentRange();
+        // 服务端忽略 Range 时首个响应即为完整对象
+        long size = contentRange == null ? response.contentLength()
+                : Long.parseLong(contentRange.substring(contentRange.lastIndexOf('/') + 1));
+        long partSize = Math.max(download.getPartSize(), 1);
+        List<ByteRange> parts = new ArrayList<>();
+        for (long start = contentRange == null ? size : threshold; start < size; start += partSize) {
+            parts.add(new ByteRange(start, Math.min(start + partSize, size) - 1));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(outputFile, "rw");
+             FileChannel channel = file.getChannel()) {
+            file.setLength(size);
+            long[] offset = {0};
+            CompletableFuture<Void> head = publisher.subscribe(buffer -> offset[0] += write(channel, buffer, offset[0]));
+            try {
+                runBounded(parts.iterator(), download.getParallelism(), part -> {
+                    GetObjectRequest request = GetObjectRequest.builder()
+                            .bucket(bucketName)
+                            .key(key)
+                            .range(part.toHeader())
+                            .ifMatch(response.eTag())
+                            .build();
+                    return client.getObject(request, AsyncResponseTransformer.toPublisher()).thenCompose(p -> {
+                        long[] position = {part.getStart()};
+                        return p.subscribe(buffer -> position[0] += write(channel, buffer, position[0]));
+                    });
+                });
+            } catch (CompletionException e) {
+                // 关闭文件前等待首个请求结束
+                head.handle((r, t) -> null).join();
+                throw e;
+            }
+            head.join();
+        } catch (IOException e) {
+            outputFile.delete();
+            throw new UncheckedIOException("下载文件失败: " + key, e);
+        } catch (CompletionException e) {
+            outputFile.delete();
+            throw e;
+        }
+    }
+
+    private int write(FileChannel channel, ByteBuffer buffer, long position) {
+        int written = 0;
+        try {
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer, position + written);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return written;
     }
 
     /**
@@ -386,9 +678,10 @@ public class QueryOperations extends Operations {
      *
      * @param objectName    文件全路径
      * @param localFilePath 存放位置
+     * @return 下载结果
      */
-    public void getFolder(String objectName, String localFilePath) {
-        getFolder(ossProperties.getBucketName(), objectName, localFilePath);
+    public BatchResult getFolder(String objectName, String localFilePath) {
+        return getFolder(ossProperties.getBucketName(), objectName, localFilePath);
     }
 
     /**
@@ -397,19 +690,52 @@ public class QueryOperations extends Operations {
      * @param bucketName    存储桶
      * @param objectName    文件全路径
      * @param localFilePath 存放位置
+     * @return 下载结果
      */
-    public void getFolder(String bucketName, String objectName, String localFilePath) {
-        List<S3Object> s3Objects = listObject(bucketName, objectName, null);
-        if (!localFilePath.endsWith(File.pathSeparator)) {
-            localFilePath += File.separator;
-        }
-        for (S3Object s3Object : s3Objects) {
-            String filepath;
-            String slash = "/".equals(File.separator) ? "/" : "\\\\";
-            String key = s3Object.key().replace(objectName + "/", "").replaceAll("/", slash);
-            filepath = localFilePath + key;
-            this.getFile(bucketName, s3Object.key(), filepath);
+    public BatchResult getFolder(String bucketName, String objectName, String localFilePath) {
+        return getFolder(bucketName, objectName, localFilePath, null);
+    }
+
+    /**
+     * 并发下载文件夹，边分页列举边下载
+     *
+     * @param bucketName    存储桶
+     * @param objectName    文件全路径
+     * @param localFilePath 存放位置
+     * @param listener      单个文件的下载进度回调，可为null
+     * @return 下载结果，包含下载失败的文件
+     */
+    public BatchResult getFolder(String bucketName, String objectName, String localFilePath, TransferListener listener) {
+        long startTime = System.currentTimeMillis();
+        String prefix = Util.formatPath(objectName);
+        AtomicLong successCount = new AtomicLong();
+        TransferListener counter = new TransferListener() {
+            @Override
+            public void transferComplete(Context.TransferComplete context) {
+                successCount.incrementAndGet();
+            }
+        };
+        DownloadDirectoryRequest request = DownloadDirectoryRequest.builder()
+                .bucket(bucketName)
+                .destination(Paths.get(localFilePath))
+                .listObjectsV2RequestTransformer(b -> b.prefix(prefix))
+                .downloadFileRequestTransformer(b -> {
+                    b.addTransferListener(counter);
+                    if (listener != null) {
+                        b.addTransferListener(listener);
+                    }
+                })
+                .build();
+        CompletedDirectoryDownload completed = transferManager.downloadDirectory(request).completionFuture().join();
+
+        BatchResult result = new BatchResult();
+        for (FailedFileDownload failed : completed.failedTransfers()) {
+            String key = failed.request().getObjectRequest().key();
+            log.error("下载文件失败【{}】", key, failed.exception());
+            result.getFailed().put(key, failed.exception().getMessage());
         }
+        return result.setSuccessCount(successCount.get())
+                .setCostTime(System.currentTimeMillis() - startTime);
     }
 
     /**
@@ -433,12 +759,14 @@ public class QueryOperations extends Operations {
             String fileName = Util.getFilename(objectName);
             String encodedFileName = java.net.URLEncoder.encode(fileName, "UTF-8").replaceAll("\\+", "%20");
 
-            ObjectInfo objectInfo = getObjectInfo(objectName);
+            ObjectInfo objectInfo;
+            try {
+                objectInfo = fetchObjectInfo(ossProperties.getBucketName(), objectName);
+            } catch (CompletionException e) {
+                throw new IOException("获取文件信息失败: " + objectName, e.getCause() != null ? e.getCause() : e);
+            }
             if (objectInfo == null) {
-                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
-                response.setHeader("content-type", "text/html;charset=utf-8");
-                // 文件不存在
-                response.getWriter().println("<html><head><title>404 Not Found</title></head><body><h1>404 Not Found</h1></body></html>");
+                writeNotFound(response);
                 return;
             }
             long fileSize = objectInfo.getSize();
@@ -451,57 +779,29 @@ public class QueryOperations extends Operations {
                 response.setContentLengthLong(fileSize);
                 return;
             }
-            if (rangeHeader == null) {
+            // 无法解析的 Range 按完整下载处理
+            List<ByteRange> ranges = ByteRange.parse(rangeHeader, fileSize);
+            if (ranges == null) {
                 // 完整下载
-                try (InputStream inputStream = getInputStream(objectName);
+                // 先确认对象可读再打开输出流，不存在时仍可返回404
+                PublisherInputStream inputStream = openStream(getObjectRequest(ossProperties.getBucketName(), objectName));
+                if (inputStream == null) {
+                    writeNotFound(response);
+                    return;
+                }
+                try (PublisherInputStream in = inputStream;
                      OutputStream outputStream = response.getOutputStream()) {
                     response.setContentLengthLong(fileSize);
-                    byte[] buffer = new byte[2 * 1024];
-                    int bytesRead;
-                    while ((bytesRead = inputStream.read(buffer)) != -1) {
-                        outputStream.write(buffer, 0, bytesRead);
-                    }
+                    in.writeTo(outputStream);
                 }
+            } else if (ranges.isEmpty()) {
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.setHeader("Content-Range", "bytes */" + fileSize);
             } else {
                 // 分段下载
-                long start;
-                long end;
-                String[] range = rangeHeader.split("=")[1].split("-");
-                if (range.length == 1) {
-                    start = Long.parseLong(range[0]);
-                    end = fileSize - 1;
-                } else {
-                    start = Long.parseLong(range[0]);
-                    end = Long.parseLong(range[1]);
-                }
-                long contentLength = end - start + 1;
-                // 返回头里存放每次读取的开始和结束字节
-                response.setHeader("Content-Length", String.valueOf(contentLength));
-                response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + fileSize);
-                try (InputStream inputStream = getInputStream(ossProperties.getBucketName(), objectName, rangeHeader);
-                     OutputStream outputStream = response.getOutputStream()) {
-                    // 跳到第start字节
-//                    inputStream.skip(start);
-                    byte[] buffer = new byte[2 * 1024];
-                    int bytesRead;
-                    long bytesWritten = 0;
-                    while ((bytesRead = inputStream.read(buffer)) != -1) {
-                        if (bytesWritten + bytesRead > contentLength) {
-                            outputStream.write(buffer, 0, (int) (contentLength - bytesWritten));
-                            break;
-                        } else {
-                            outputStream.write(buffer, 0, bytesRead);
-                            bytesWritten += bytesRead;
-                        }
-                    }
-                }
+                writeRanges(response, objectName, fileSize, ByteRange.coalesce(ranges, 0));
             }
 
-        } catch (NoSuchKeyException e) {
-            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
-            response.setHeader("content-type", "text/html;charset=utf-8");
-            // 文件不存在
-            response.getWriter().println("<html><head><title>404 Not Found</title></head><body><h1>404 Not Found</h1></body></html>");
         } catch (IOException e) {
             if ("Broken pipe".equals(e.getMessage())) {
                 return;
@@ -510,6 +810,116 @@ public class QueryOperations extends Operations {
         }
     }
 
+    private void writeNotFound(HttpServletResponse response) throws IOException {
+        response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        response.setHeader("content-type", "text/html;charset=utf-8");
+        // 文件不存在
+        response.getWriter().println("<html><head><title>404 Not Found</title></head><body><h1>404 Not Found</h1></body></html>");
+    }
+
+    /**
+     * 打开对象流，对象不存在时返回null，其他失败以IOException抛出
+     *
+     * @param request 请求
+     * @return 文件流
+     * @throws IOException 读取失败
+     */
+    private PublisherInputStream openStream(GetObjectRequest request) throws IOException {
+        CompletableFuture<PublisherInputStream> future = getStream(request);
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (isNotFound(future)) {
+                return null;
+            }
+            throw new IOException("读取文件失败: " + request.key(), e.getCause() != null ? e.getCause() : e);
+        }
+    }
+
+
+    /**
+     * 输出分段内容，间隔较小的分段合并为一次上游请求，多段时以 multipart/byteranges 返回
+     *
+     * @param response   响应
+     * @param objectName 文件全路径
+     * @param fileSize   文件大小
+     * @param ranges     已排序且互不重叠的分段
+     * @throws IOException io异常
+     */
+    private void writeRanges(HttpServletResponse response, String objectName, long fileSize, List<ByteRange> ranges) throws IOException {
+        List<ByteRange> requests = ByteRange.coalesce(ranges, ossProperties.getDownload().getRangeCoalesceGap());
+        // 写出响应头前打开首个上游请求，对象不存在时仍可返回404
+        PublisherInputStream first = openStream(rangeRequest(objectName, requests.get(0)));
+        if (first == null) {
+            writeNotFound(response);
+            return;
+        }
+        String contentType = response.getContentType();
+        String boundary = null;
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        byte[] closeDelimiter = null;
+        long contentLength = 0;
+        if (ranges.size() == 1) {
+            contentLength = ranges.get(0).length();
+            response.setHeader("Content-Range", ranges.get(0).toContentRange(fileSize));
+        } else {
+            boundary = UUID.randomUUID().toString().replace("-", "");
+            for (ByteRange range : ranges) {
+                byte[] header = ("\r\n--" + boundary + "\r\nContent-Type: " + contentType
+                        + "\r\nContent-Range: " + range.toContentRange(fileSize) + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+                partHeaders.add(header);
+                contentLength += header.length + range.length();
+            }
+            closeDelimiter = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+            contentLength += closeDelimiter.length;
+            response.setContentType("multipart/byteranges; boundary=" + boundary);
+        }
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setContentLengthLong(contentLength);
+
+        PublisherInputStream next = first;
+        try (OutputStream outputStream = response.getOutputStream()) {
+            int index = 0;
+            for (ByteRange request : requests) {
+                if (next == null) {
+                    next = openStream(rangeRequest(objectName, request));
+                    if (next == null) {
+                        throw new IOException("文件已被删除: " + objectName);
+                    }
+                }
+                try (PublisherInputStream inputStream = next) {
+                    next = null;
+                    long position = request.getStart();
+                    // 一次上游请求覆盖的所有分段
+                    while (index < ranges.size() && ranges.get(index).getEnd() <= request.getEnd()) {
+                        ByteRange range = ranges.get(index);
+                        inputStream.skip(range.getStart() - position);
+                        if (boundary != null) {
+                            outputStream.write(partHeaders.get(index));
+                        }
+                        inputStream.writeTo(outputStream, range.length());
+                        position = range.getEnd() + 1;
+                        index++;
+                    }
+                }
+            }
+            if (closeDelimiter != null) {
+                outputStream.write(closeDelimiter);
+            }
+        } finally {
+            if (next != null) {
+                next.close();
+            }
+        }
+    }
+
+    private GetObjectRequest rangeRequest(String objectName, ByteRange range) {
+        return GetObjectRequest.builder()
+                .bucket(ossProperties.getBucketName())
+                .key(Util.formatPath(objectName))
+                .range(range.toHeader())
+                .build();
+    }
 
     /**
      * 获取目录结构
@@ -533,6 +943,68 @@ public class QueryOperations extends Operations {
         return buildTree(objects, path);
     }
 
+    /**
+     * 按层级懒加载目录结构，只展开 depth 层，每个文件夹最多返回 pageSize 个子节点
+     * <p>
+     * 子节点未返回完整的文件夹带有 nextToken，以该文件夹为 path、nextToken 为 token 再次调用即可加载下一页
+     *
+     * @param path     目录
+     * @param depth    展开层数，限制在1~treeMaxDepth之间
+     * @param pageSize 每个文件夹的子节点数量，限制在1~1000之间
+     * @param token    path 的页令牌，为空时从第一页开始
+     * @return 树形结构
+     */
+    public ObjectTreeNode getTreeList(String path, int depth, int pageSize, String token) {
+        return getTreeList(ossProperties.getBucketName(), path, depth, pageSize, token);
+    }
+
+    /**
+     * 按层级懒加载目录结构，只展开 depth 层，每个文件夹最多返回 pageSize 个子节点
+     * <p>
+     * 每个文件夹只需一次分隔符列举请求，同层文件夹并发展开。
+     * 返回的节点总数不超过 treeMaxNodes，预计超出时其余文件夹不再展开（children 为null），可以该文件夹为 path 再次加载
+     *
+     * @param bucketName 存储桶
+     * @param path       目录
+     * @param depth      展开层数，限制在1~treeMaxDepth之间
+     * @param pageSize   每个文件夹的子节点数量，限制在1~1000之间
+     * @param token      path 的页令牌，为空时从第一页开始
+     * @return 树形结构
+     */
+    public ObjectTreeNode getTreeList(String bucketName, String path, int depth, int pageSize, String token) {
+        String prefix = Util.formatPath(path);
+        ObjectTreeNode root = buildTreeNode(prefix);
+        int maxDepth = Math.max(ossProperties.getTreeMaxDepth(), 1);
+        int pageLimit = Math.min(Math.max(pageSize, 1), 1000);
+        // 每展开一个文件夹最多增加 pageLimit 个节点，根目录总是展开
+        long remaining = Math.max((long) ossProperties.getTreeMaxNodes() - pageLimit, 0);
+        // 逐层展开，同时列举的目录数不超过 listParallelism
+        List<ObjectTreeNode> level = Collections.singletonList(root);
+        for (int i = Math.min(Math.max(depth, 1), maxDepth); i > 0 && !level.isEmpty(); i--) {
+            runBounded(level.iterator(), ossProperties.getListParallelism(), node -> {
+                String nodePrefix = node == root ? prefix : node.getUri() + "/";
+                return listLevelPage(bucketName, nodePrefix, pageLimit, node == root ? token : null).thenAccept(page -> {
+                    node.setChildren(page.getItems());
+                    node.setNextToken(page.getNextToken());
+                });
+            });
+            if (i == 1) {
+                break;
+            }
+            List<ObjectTreeNode> next = new ArrayList<>();
+            for (ObjectTreeNode node : level) {
+                for (ObjectTreeNode child : node.getChildren()) {
+                    if ("folder".equals(child.getType()) && remaining >= pageLimit) {
+                        remaining -= pageLimit;
+                        next.add(child);
+                    }
+                }
+            }
+            level = next;
+        }
+        return root;
+    }
+
     /**
      * 获取目录结构
      *
@@ -558,7 +1030,7 @@ public class QueryOperations extends Operations {
         return getTreeListByName(ossProperties.getBucketName(), path, keyword);
     }
 
-    private ObjectTreeNode buildTree(List<S3Object> objectList, String objectName) {
+    ObjectTreeNode buildTree(List<S3Object> objectList, String objectName) {
         String rootName;
         if (Util.isBlank(objectName)) {
             rootName = "";
@@ -569,52 +1041,94 @@ public class QueryOperations extends Operations {
 
         ObjectTreeNode root = new ObjectTreeNode(rootName, objectName, getDomain() + objectName, null, "folder", 0, null);
 
+        String rootPrefix = objectName + "/";
+        TreeIndex index = new TreeIndex(root);
         for (S3Object object : objectList) {
-            if (object.key().startsWith(objectName + "/")) {
-                String remainingPath = object.key().substring(objectName.length() + 1);
-                addNode(root, remainingPath, object);
+            if (object.key().startsWith(rootPrefix)) {
+                index.add(object, rootPrefix.length());
             } else if (!Util.isBlank(objectName)) {
-                addNode(root, object.key(), object);
+                index.add(object, 0);
             }
         }
 
         return root;
     }
 
-    private void addNode(ObjectTreeNode parentNode, String remainingPath, S3Object object) {
-        int slashIndex = remainingPath.indexOf('/');
-        if (slashIndex == -1) { // 文件节点
-            if (Util.isBlank(remainingPath)) {
-                return;
-            }
-            ObjectTreeNode fileNode = new ObjectTreeNode(remainingPath, object.key(), getDomain() + object.key(),
-                    Date.from(object.lastModified()), "file", object.size(), Util.getExtension(object.key()));
-            parentNode.addChild(fileNode);
-        } else { // 文件夹节点
-            String folderName = remainingPath.substring(0, slashIndex);
-            String newRemainingPath = remainingPath.substring(slashIndex + 1);
-
-            // 在当前节点的子节点中查找是否已存在同名文件夹节点
-            ObjectTreeNode folderNode = findFolderNode(parentNode.getChildren(), folderName);
-            if (folderNode == null) { // 若不存在，则创建新的文件夹节点
-                String uri = Util.isBlank(parentNode.getUri()) ? folderName : parentNode.getUri() + "/" + folderName;
-                folderNode = new ObjectTreeNode(folderName, uri, getDomain() + uri, null, "folder", 0, null);
-                parentNode.addChild(folderNode);
-            }
+    /**
+     * 目录树索引，按相对路径索引已创建的文件夹节点，单次遍历完成构建
+     * <p>
+     * 列举结果按key有序，相邻对象通常位于同一文件夹，因此缓存上一个对象所在的文件夹，命中时无需查找
+     */
+    private class TreeIndex {
+
+        private final ObjectTreeNode root;
 
-            addNode(folderNode, newRemainingPath, object);
+        private final String domain = getDomain();
+
+        /**
+         * 相对路径到文件夹节点的索引
+         */
+        private final Map<String, ObjectTreeNode> folders = new HashMap<>();
+
+        private String lastPath;
+
+        private ObjectTreeNode lastFolder;
+
+        TreeIndex(ObjectTreeNode root) {
+            this.root = root;
         }
-    }
 
-    private ObjectTreeNode findFolderNode(List<ObjectTreeNode> nodes, String folderName) {
-        if (nodes == null) {
-            return null;
+        /**
+         * 添加对象
+         *
+         * @param object 对象
+         * @param offset 相对路径在key中的起始位置
+         */
+        void add(S3Object object, int offset) {
+            String key = object.key();
+            int lastSlash = key.lastIndexOf('/');
+            ObjectTreeNode parent;
+            if (lastSlash < offset) {
+                parent = root;
+            } else {
+                int length = lastSlash - offset;
+                if (lastPath != null && lastPath.length() == length && key.regionMatches(offset, lastPath, 0, length)) {
+                    parent = lastFolder;
+                } else {
+                    parent = folder(key, offset, lastSlash);
+                    lastPath = key.substring(offset, lastSlash);
+                    lastFolder = parent;
+                }
+            }
+            String name = key.substring(Math.max(lastSlash + 1, offset));
+            if (Util.isBlank(name)) {
+                return;
+            }
+            parent.addChild(new ObjectTreeNode(name, key, domain + key,
+                    Date.from(object.lastModified()), "file", object.size(), Util.getExtension(key)));
         }
-        for (ObjectTreeNode node : nodes) {
-            if (node.getName().equals(folderName) && "folder".equals(node.getType())) {
-                return node;
+
+        /**
+         * 逐级查找或创建文件夹节点
+         */
+        private ObjectTreeNode folder(String key, int offset, int end) {
+            ObjectTreeNode node = root;
+            int start = offset;
+            while (start <= end) {
+                int slash = key.indexOf('/', start);
+                String path = key.substring(offset, slash);
+                ObjectTreeNode child = folders.get(path);
+                if (child == null) {
+                    String folderName = key.substring(start, slash);
+                    String uri = Util.isBlank(node.getUri()) ? folderName : node.getUri() + "/" + folderName;
+                    child = new ObjectTreeNode(folderName, uri, domain + uri, null, "folder", 0, null);
+                    node.addChild(child);
+                    folders.put(path, child);
+                }
+                node = child;
+                start = slash + 1;
             }
+            return node;
         }
-        return null;
     }
 }
@@ -0,0 +1,123 @@
+package com.wiblog.oss.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wiblog.oss.bean.chunk.ChunkProcess;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.DigestUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 基于本地文件的上传进度存储，每个任务一个 json 文件，服务重启后仍可续传
+ * <p>
+ * 超过过期时间未更新的任务在创建新任务时清理
+ *
+ * @author panwm
+ * @since 2024/9/24 21:36
+ */
+@Slf4j
+public class FileUploadSessionStore implements UploadSessionStore {
+
+    private static final String SUFFIX = ".json";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Path directory;
+
+    private final long ttl;
+
+    /**
+     * @param directory 存储目录
+     * @param ttl       任务过期时间（毫秒）
+     */
+    public FileUploadSessionStore(Path directory, long ttl) {
+        this.directory = directory;
+        this.ttl = ttl;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new IllegalStateException("无法创建上传进度目录: " + directory, e);
+        }
+    }
+
+    @Override
+    public synchronized void create(ChunkProcess process) {
+        cleanExpired();
+        write(process);
+    }
+
+    @Override
+    public synchronized ChunkProcess get(String uploadId) {
+        Path file = file(uploadId);
+        try {
+            if (!Files.exists(file) || isExpired(file)) {
+                return null;
+            }
+            return objectMapper.readValue(file.toFile(), ChunkProcess.class);
+        } catch (IOException e) {
+            log.warn("读取上传进度失败: {}", file, e);
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized void addPart(String uploadId, ChunkProcess.ChunkPart part) {
+        ChunkProcess process = get(uploadId);
+        if (process != null) {
+            process.getChunkList().removeIf(e -> e.getChunkNumber() == part.getChunkNumber());
+            process.getChunkList().add(part);
+            write(process);
+        }
+    }
+
+    @Override
+    public synchronized void remove(String uploadId) {
+        delete(file(uploadId));
+    }
+
+    private void write(ChunkProcess process) {
+        Path file = file(process.getUploadId());
+        Path temp = directory.resolve(file.getFileName() + ".tmp");
+        try {
+            // 先写临时文件再替换，避免进程中断时留下不完整的记录
+            objectMapper.writeValue(temp.toFile(), process);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void cleanExpired() {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                if (isExpired(file)) {
+                    delete(file);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("清理上传进度失败: {}", directory, e);
+        }
+    }
+
+    private boolean isExpired(Path file) throws IOException {
+        return Files.getLastModifiedTime(file).toMillis() + ttl < System.currentTimeMillis();
+    }
+
+    private void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.debug("删除上传进度失败: {}", file, e);
+        }
+    }
+
+    private Path file(String uploadId) {
+        return directory.resolve(DigestUtils.md5DigestAsHex(uploadId.getBytes(StandardCharsets.UTF_8)) + SUFFIX);
+    }
+}
@@ -0,0 +1,38 @@
+package com.wiblog.oss.store;
+
+/**
+ * 文件内容hash索引，记录相同内容已存在的对象，用于秒传
+ * <p>
+ * 索引只作为线索，命中后仍会通过对象元数据中的hash校验，可注册自定义实现的 Bean 替换默认实现
+ *
+ * @author panwm
+ * @since 2024/9/26 20:48
+ */
+public interface HashIndex {
+
+    /**
+     * 查找内容hash对应的对象
+     *
+     * @param bucketName 存储桶
+     * @param hash       内容hash
+     * @return 对象key，未记录时返回null
+     */
+    String get(String bucketName, String hash);
+
+    /**
+     * 记录内容hash对应的对象
+     *
+     * @param bucketName 存储桶
+     * @param hash       内容hash
+     * @param objectName 对象key
+     */
+    void put(String bucketName, String hash, String objectName);
+
+    /**
+     * 移除失效的记录
+     *
+     * @param bucketName 存储桶
+     * @param hash       内容hash
+     */
+    void remove(String bucketName, String hash);
+}
@@ -0,0 +1,52 @@
+package com.wiblog.oss.store;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 基于 LRU 的本地hash索引，服务重启后从空索引开始
+ *
+ * @author panwm
+ * @since 2024/9/26 20:55
+ */
+public class LocalHashIndex implements HashIndex {
+
+    private final Map<String, String> index;
+
+    /**
+     * @param maxSize 最大记录数
+     */
+    public LocalHashIndex(int maxSize) {
+        this.index = new LinkedHashMap<String, String>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    @Override
+    public String get(String bucketName, String hash) {
+        synchronized (index) {
+            return index.get(indexKey(bucketName, hash));
+        }
+    }
+
+    @Override
+    public void put(String bucketName, String hash, String objectName) {
+        synchronized (index) {
+            index.put(indexKey(bucketName, hash), objectName);
+        }
+    }
+
+    @Override
+    public void remove(String bucketName, String hash) {
+        synchronized (index) {
+            index.remove(indexKey(bucketName, hash));
+        }
+    }
+
+    private String indexKey(String bucketName, String hash) {
+        return bucketName + "/" + hash;
+    }
+}
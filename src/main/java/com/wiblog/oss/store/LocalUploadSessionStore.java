@@ -0,0 +1,95 @@
+package com.wiblog.oss.store;
+
+import com.wiblog.oss.bean.chunk.ChunkProcess;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 基于内存的上传进度存储，按条数和创建时间淘汰，服务重启后进度丢失
+ *
+ * @author panwm
+ * @since 2024/9/24 21:18
+ */
+public class LocalUploadSessionStore implements UploadSessionStore {
+
+    private final long ttl;
+
+    private final Map<String, Entry> sessions;
+
+    /**
+     * @param maxSize 最大任务数
+     * @param ttl     任务过期时间（毫秒）
+     */
+    public LocalUploadSessionStore(int maxSize, long ttl) {
+        this.ttl = ttl;
+        this.sessions = new LinkedHashMap<String, Entry>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    @Override
+    public void create(ChunkProcess process) {
+        Entry entry = new Entry(copy(process), System.currentTimeMillis() + ttl);
+        synchronized (sessions) {
+            sessions.put(process.getUploadId(), entry);
+        }
+    }
+
+    @Override
+    public ChunkProcess get(String uploadId) {
+        synchronized (sessions) {
+            Entry entry = getEntry(uploadId);
+            return entry == null ? null : copy(entry.process);
+        }
+    }
+
+    @Override
+    public void addPart(String uploadId, ChunkProcess.ChunkPart part) {
+        synchronized (sessions) {
+            Entry entry = getEntry(uploadId);
+            if (entry != null) {
+                entry.process.getChunkList().removeIf(e -> e.getChunkNumber() == part.getChunkNumber());
+                entry.process.getChunkList().add(new ChunkProcess.ChunkPart(part.getLocation(), part.getChunkNumber()));
+            }
+        }
+    }
+
+    @Override
+    public void remove(String uploadId) {
+        synchronized (sessions) {
+            sessions.remove(uploadId);
+        }
+    }
+
+    private Entry getEntry(String uploadId) {
+        Entry entry = sessions.get(uploadId);
+        if (entry != null && entry.expireAt < System.currentTimeMillis()) {
+            sessions.remove(uploadId);
+            return null;
+        }
+        return entry;
+    }
+
+    private static ChunkProcess copy(ChunkProcess process) {
+        ChunkProcess copy = new ChunkProcess(process.getUploadId(), process.getObjectKey(), new ArrayList<>(), process.getHash());
+        process.getChunkList().forEach(e -> copy.getChunkList().add(new ChunkProcess.ChunkPart(e.getLocation(), e.getChunkNumber())));
+        return copy;
+    }
+
+    private static class Entry {
+
+        private final ChunkProcess process;
+
+        private final long expireAt;
+
+        Entry(ChunkProcess process, long expireAt) {
+            this.process = process;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.wiblog.oss.store;
+
+import com.wiblog.oss.bean.chunk.ChunkProcess;
+
+/**
+ * 分片上传进度存储，记录每个 uploadId 已上传的分片
+ * <p>
+ * 用于断点续传时查询缺失分片以及在合并时构建分片列表，无需每次调用 listParts。
+ * 可注册自定义实现的 Bean（如数据库、Redis）替换默认实现
+ *
+ * @author panwm
+ * @since 2024/9/24 21:05
+ */
+public interface UploadSessionStore {
+
+    /**
+     * 创建上传任务
+     *
+     * @param process 上传任务，分片列表通常为空
+     */
+    void create(ChunkProcess process);
+
+    /**
+     * 获取上传任务
+     *
+     * @param uploadId 上传任务id
+     * @return 上传进度的副本，不存在或已过期返回null
+     */
+    ChunkProcess get(String uploadId);
+
+    /**
+     * 记录一个已上传的分片，同一分片号重复上传时覆盖
+     *
+     * @param uploadId 上传任务id
+     * @param part     分片信息
+     */
+    void addPart(String uploadId, ChunkProcess.ChunkPart part);
+
+    /**
+     * 移除上传任务
+     *
+     * @param uploadId 上传任务id
+     */
+    void remove(String uploadId);
+}
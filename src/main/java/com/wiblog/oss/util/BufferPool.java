@@ -0,0 +1,191 @@
+package com.wiblog.oss.util;
+
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 固定大小的堆外缓冲区池
+ * <p>
+ * 缓冲区按需创建并重复使用，堆外内存总量不超过 maxBytes，耗尽时 acquire 阻塞直到有缓冲区归还。
+ * 超过缓冲区大小的请求由多个缓冲区依次承接，同样受总量限制
+ *
+ * @author panwm
+ * @since 2024/9/22 20:12
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+
+    private final int maxBuffers;
+
+    private final BlockingQueue<ByteBuffer> free = new LinkedBlockingQueue<>();
+
+    /**
+     * 已创建的缓冲区数
+     */
+    private final AtomicInteger created = new AtomicInteger();
+
+    /**
+     * 复用已有缓冲区的次数
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * 新建缓冲区的次数
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * 同一时刻只允许一个调用方分批获取多个缓冲区，避免多个调用方各持一部分相互等待
+     */
+    private final ReentrantLock chainLock = new ReentrantLock();
+
+    public BufferPool(int bufferSize, long maxBytes) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.maxBuffers = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxBytes / bufferSize));
+    }
+
+    /**
+     * 获取一个已清空的缓冲区，池耗尽时阻塞等待
+     *
+     * @return 缓冲区
+     * @throws InterruptedIOException 等待时线程被中断
+     */
+    public ByteBuffer acquire() throws InterruptedIOException {
+        ByteBuffer buffer = free.poll();
+        if (buffer != null) {
+            hits.incrementAndGet();
+        } else if ((buffer = tryCreate()) != null) {
+            misses.incrementAndGet();
+        } else {
+            try {
+                buffer = free.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for buffer");
+            }
+            hits.incrementAndGet();
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * 获取合计可容纳 size 字节的一组缓冲区，除最后一个外均为整个缓冲区，最后一个的 limit 为剩余字节数
+     *
+     * @param size 所需字节数
+     * @return 缓冲区，至少一个
+     * @throws InterruptedIOException 等待时线程被中断
+     */
+    public ByteBuffer[] acquire(long size) throws InterruptedIOException {
+        if (size < 0) {
+            throw new IllegalArgumentException("size must not be negative");
+        }
+        long count = Math.max(1, (size + bufferSize - 1) / bufferSize);
+        if (count > maxBuffers) {
+            throw new IllegalArgumentException("size " + size + " exceeds buffer pool capacity " + (long) maxBuffers * bufferSize);
+        }
+        ByteBuffer[] buffers = new ByteBuffer[(int) count];
+        if (count == 1) {
+            buffers[0] = acquire();
+        } else {
+            try {
+                chainLock.lockInterruptibly();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for buffer");
+            }
+            try {
+                for (int i = 0; i < buffers.length; i++) {
+                    buffers[i] = acquire();
+                }
+            } catch (InterruptedIOException e) {
+                release(buffers);
+                throw e;
+            } finally {
+                chainLock.unlock();
+            }
+        }
+        int last = (int) (size - (count - 1) * bufferSize);
+        buffers[buffers.length - 1].limit(last);
+        return buffers;
+    }
+
+    private ByteBuffer tryCreate() {
+        int count;
+        while ((count = created.get()) < maxBuffers) {
+            if (created.compareAndSet(count, count + 1)) {
+                return ByteBuffer.allocateDirect(bufferSize);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 归还缓冲区，非本池创建的缓冲区直接丢弃
+     *
+     * @param buffer 缓冲区
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer != null && buffer.isDirect() && buffer.capacity() == bufferSize) {
+            free.offer(buffer);
+        }
+    }
+
+    /**
+     * 归还一组缓冲区
+     *
+     * @param buffers 缓冲区，可包含null
+     */
+    public void release(ByteBuffer... buffers) {
+        if (buffers != null) {
+            for (ByteBuffer buffer : buffers) {
+                release(buffer);
+            }
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getMaxBuffers() {
+        return maxBuffers;
+    }
+
+    /**
+     * @return 复用已有缓冲区的次数
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return 新建缓冲区的次数
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return 已占用的堆外内存字节数
+     */
+    public long getAllocatedBytes() {
+        return (long) created.get() * bufferSize;
+    }
+
+    /**
+     * @return 空闲缓冲区数
+     */
+    public int getAvailable() {
+        return free.size();
+    }
+}
@@ -0,0 +1,149 @@
+package com.wiblog.oss.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 字节区间，对应 http Range 请求头中的一段
+ *
+ * @author panwm
+ * @since 2024/9/5 21:08
+ */
+public final class ByteRange {
+
+    /**
+     * Range 请求头前缀
+     */
+    private static final String BYTES_PREFIX = "bytes=";
+
+    /**
+     * 单个请求允许的最大分段数
+     */
+    private static final int MAX_RANGES = 100;
+
+    /**
+     * 起始位置（包含）
+     */
+    private final long start;
+
+    /**
+     * 结束位置（包含）
+     */
+    private final long end;
+
+    public ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long length() {
+        return end - start + 1;
+    }
+
+    /**
+     * @return s3 请求使用的 Range 值
+     */
+    public String toHeader() {
+        return BYTES_PREFIX + start + "-" + end;
+    }
+
+    /**
+     * @param size 文件大小
+     * @return 响应使用的 Content-Range 值
+     */
+    public String toContentRange(long size) {
+        return "bytes " + start + "-" + end + "/" + size;
+    }
+
+    /**
+     * 解析 Range 请求头，支持 a-b、a-、-n 以及多段
+     *
+     * @param header Range 请求头
+     * @param size   文件大小
+     * @return 合法的分段列表；请求头语法错误时返回null，所有分段均无法满足时返回空列表
+     */
+    public static List<ByteRange> parse(String header, long size) {
+        if (header == null || !header.startsWith(BYTES_PREFIX)) {
+            return null;
+        }
+        String[] specs = header.substring(BYTES_PREFIX.length()).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+        List<ByteRange> ranges = new ArrayList<>(specs.length);
+        try {
+            for (String spec : specs) {
+                spec = spec.trim();
+                int dash = spec.indexOf('-');
+                if (dash < 0) {
+                    return null;
+                }
+                if (dash == 0) {
+                    // 后缀区间 -n
+                    long suffix = Long.parseLong(spec.substring(1));
+                    if (suffix < 0) {
+                        return null;
+                    }
+                    if (suffix > 0 && size > 0) {
+                        ranges.add(new ByteRange(Math.max(0, size - suffix), size - 1));
+                    }
+                    continue;
+                }
+                long start = Long.parseLong(spec.substring(0, dash));
+                String endValue = spec.substring(dash + 1);
+                long end = endValue.isEmpty() ? size - 1 : Long.parseLong(endValue);
+                if (start < 0 || (!endValue.isEmpty() && end < start)) {
+                    return null;
+                }
+                if (start < size) {
+                    ranges.add(new ByteRange(start, Math.min(end, size - 1)));
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return ranges;
+    }
+
+    /**
+     * 排序并合并重叠或间隔不超过 gap 的分段
+     *
+     * @param ranges 分段列表
+     * @param gap    允许合并的最大间隔字节数
+     * @return 合并后的分段列表
+     */
+    public static List<ByteRange> coalesce(List<ByteRange> ranges, long gap) {
+        if (ranges.size() <= 1) {
+            return ranges;
+        }
+        List<ByteRange> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparingLong(ByteRange::getStart));
+        List<ByteRange> result = new ArrayList<>(sorted.size());
+        ByteRange current = sorted.get(0);
+        for (int i = 1; i < sorted.size(); i++) {
+            ByteRange next = sorted.get(i);
+            if (next.start <= current.end + 1 + gap) {
+                current = new ByteRange(current.start, Math.max(current.end, next.end));
+            } else {
+                result.add(current);
+                current = next;
+            }
+        }
+        result.add(current);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return start + "-" + end;
+    }
+}
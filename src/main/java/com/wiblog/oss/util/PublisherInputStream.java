@@ -0,0 +1,240 @@
+package com.wiblog.oss.util;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 将异步字节发布者桥接为阻塞输入流
+ * <p>
+ * 仅在已缓冲未消费的字节数低于 bufferSize 时才向上游请求数据，
+ * 单次下载占用的内存与对象大小无关，使用完毕后必须关闭以释放连接
+ *
+ * @author panwm
+ * @since 2024/9/2 22:15
+ */
+public class PublisherInputStream extends InputStream implements Subscriber<ByteBuffer> {
+
+    /**
+     * 结束标记
+     */
+    private static final ByteBuffer EOF = ByteBuffer.allocate(0);
+
+    /**
+     * 堆外缓冲块写出时使用的中转数组大小
+     */
+    private static final int SCRATCH_SIZE = 16 * 1024;
+
+    private final long bufferSize;
+
+    private final BlockingQueue<ByteBuffer> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * 已接收但未被读取的字节数
+     */
+    private final AtomicLong bufferedBytes = new AtomicLong();
+
+    /**
+     * 是否存在尚未到达的请求
+     */
+    private final AtomicBoolean outstanding = new AtomicBoolean();
+
+    private volatile Subscription subscription;
+
+    private volatile Throwable error;
+
+    private volatile boolean closed;
+
+    private ByteBuffer current;
+
+    private int currentSize;
+
+    private boolean finished;
+
+    public PublisherInputStream(long bufferSize) {
+        this.bufferSize = Math.max(bufferSize, 1);
+    }
+
+    @Override
+    public void onSubscribe(Subscription s) {
+        if (this.subscription != null || closed) {
+            s.cancel();
+            return;
+        }
+        this.subscription = s;
+        requestMore();
+    }
+
+    @Override
+    public void onNext(ByteBuffer byteBuffer) {
+        bufferedBytes.addAndGet(byteBuffer.remaining());
+        queue.offer(byteBuffer);
+        outstanding.set(false);
+        requestMore();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        this.error = t;
+        queue.offer(EOF);
+    }
+
+    @Override
+    public void onComplete() {
+        queue.offer(EOF);
+    }
+
+    private void requestMore() {
+        if (!closed && bufferedBytes.get() < bufferSize && outstanding.compareAndSet(false, true)) {
+            subscription.request(1);
+        }
+    }
+
+    /**
+     * 获取当前可读的缓冲块，读取完毕返回null
+     *
+     * @return 缓冲块
+     * @throws IOException 上游异常或线程中断
+     */
+    private ByteBuffer nextBuffer() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (current == null || !current.hasRemaining()) {
+            if (current != null) {
+                current = null;
+                bufferedBytes.addAndGet(-currentSize);
+                requestMore();
+            }
+            if (finished) {
+                return null;
+            }
+            ByteBuffer buffer;
+            try {
+                buffer = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for data");
+            }
+            if (buffer == EOF) {
+                finished = true;
+                if (error != null) {
+                    throw new IOException(error);
+                }
+                return null;
+            }
+            current = buffer;
+            currentSize = buffer.remaining();
+        }
+        return current;
+    }
+
+    @Override
+    public int read() throws IOException {
+        ByteBuffer buffer = nextBuffer();
+        return buffer == null ? -1 : buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        ByteBuffer buffer = nextBuffer();
+        if (buffer == null) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n) {
+            ByteBuffer buffer = nextBuffer();
+            if (buffer == null) {
+                break;
+            }
+            int step = (int) Math.min(n - skipped, buffer.remaining());
+            buffer.position(buffer.position() + step);
+            skipped += step;
+        }
+        return skipped;
+    }
+
+    /**
+     * 将剩余内容直接写入输出流，堆内缓冲块不再经过中间数组拷贝
+     *
+     * @param out 输出流
+     * @return 写入的字节数
+     * @throws IOException io异常
+     */
+    public long writeTo(OutputStream out) throws IOException {
+        return writeTo(out, Long.MAX_VALUE);
+    }
+
+    /**
+     * 将最多 limit 个字节直接写入输出流
+     *
+     * @param out   输出流
+     * @param limit 最大写入字节数
+     * @return 写入的字节数
+     * @throws IOException io异常
+     */
+    public long writeTo(OutputStream out, long limit) throws IOException {
+        long written = 0;
+        byte[] scratch = null;
+        ByteBuffer buffer;
+        while (written < limit && (buffer = nextBuffer()) != null) {
+            int length = (int) Math.min(limit - written, buffer.remaining());
+            if (buffer.hasArray()) {
+                out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+                buffer.position(buffer.position() + length);
+            } else {
+                if (scratch == null) {
+                    scratch = new byte[SCRATCH_SIZE];
+                }
+                int remaining = length;
+                while (remaining > 0) {
+                    int n = Math.min(scratch.length, remaining);
+                    buffer.get(scratch, 0, n);
+                    out.write(scratch, 0, n);
+                    remaining -= n;
+                }
+            }
+            written += length;
+        }
+        return written;
+    }
+
+    @Override
+    public int available() {
+        ByteBuffer buffer = current;
+        return buffer == null ? 0 : buffer.remaining();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Subscription s = subscription;
+        if (s != null) {
+            s.cancel();
+        }
+        queue.clear();
+        current = null;
+    }
+}
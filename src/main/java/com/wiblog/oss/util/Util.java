@@ -3,6 +3,14 @@ package com.wiblog.oss.util;
 
 import org.apache.tika.Tika;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * 工具类
  *
@@ -11,6 +19,47 @@ import org.apache.tika.Tika;
  */
 public class Util {
 
+    /**
+     * Tika 实例线程安全，创建时需加载 MIME 库，全局共享
+     */
+    private static final Tika TIKA = new Tika();
+
+    private static final String OCTET_STREAM = "application/octet-stream";
+
+    private static final int MAX_EXTENSION_LENGTH = 16;
+
+    private static final int MAX_DETECTED_TYPES = 1024;
+
+    /**
+     * 启动时预加载的常用扩展名
+     */
+    private static final String[] COMMON_EXTENSIONS = {
+            "jpg", "jpeg", "png", "gif", "bmp", "webp", "svg", "ico", "tif", "tiff",
+            "mp4", "mov", "avi", "mkv", "flv", "wmv", "webm", "m3u8", "ts",
+            "mp3", "wav", "flac", "aac", "ogg", "m4a",
+            "pdf", "doc", "docx", "xls", "xlsx", "ppt", "pptx", "txt", "csv", "md", "rtf",
+            "html", "htm", "css", "js", "json", "xml", "yml", "yaml",
+            "zip", "rar", "7z", "gz", "tar", "jar", "apk", "exe", "dwg", "ifc"
+    };
+
+    /**
+     * 常用扩展名与内容类型的映射
+     */
+    private static final Map<String, String> CONTENT_TYPES;
+
+    /**
+     * 运行期识别过的扩展名
+     */
+    private static final Map<String, String> DETECTED_TYPES = new ConcurrentHashMap<>();
+
+    static {
+        Map<String, String> contentTypes = new HashMap<>(COMMON_EXTENSIONS.length * 2);
+        for (String ext : COMMON_EXTENSIONS) {
+            contentTypes.put(ext, TIKA.detect("file." + ext));
+        }
+        CONTENT_TYPES = Collections.unmodifiableMap(contentTypes);
+    }
+
     /**
      * 截取文件名
      *
@@ -65,14 +114,55 @@ public class Util {
     }
 
     /**
-     * 获取文件内容类型
+     * 获取文件内容类型，优先按扩展名查表，未命中时由 Tika 按文件名识别并缓存
      *
      * @param filename 文件名
      * @return 文件内容类型
      */
     public static String getContentType(String filename) {
-        Tika tika = new Tika();
-        return tika.detect(filename);
+        String ext = getExtension(getFilename(filename));
+        if (ext == null || ext.length() > MAX_EXTENSION_LENGTH) {
+            return TIKA.detect(filename);
+        }
+        ext = ext.toLowerCase(Locale.ROOT);
+        String contentType = CONTENT_TYPES.get(ext);
+        if (contentType != null) {
+            return contentType;
+        }
+        contentType = DETECTED_TYPES.get(ext);
+        if (contentType == null) {
+            contentType = TIKA.detect("file." + ext);
+            if (DETECTED_TYPES.size() < MAX_DETECTED_TYPES) {
+                DETECTED_TYPES.put(ext, contentType);
+            }
+        }
+        return contentType;
+    }
+
+    /**
+     * 获取文件内容类型，按文件名无法识别时读取文件头识别
+     *
+     * @param filename 文件名
+     * @param in       支持 mark/reset 的文件流，识别后会重置到起始位置
+     * @return 文件内容类型
+     */
+    public static String getContentType(String filename, InputStream in) {
+        String contentType = getContentType(filename);
+        if (!OCTET_STREAM.equals(contentType) || in == null || !in.markSupported()) {
+            return contentType;
+        }
+        try {
+            return TIKA.detect(in, filename);
+        } catch (IOException e) {
+            return contentType;
+        }
+    }
+
+    /**
+     * @return 运行期识别并缓存的扩展名数量
+     */
+    static int getDetectedTypeCount() {
+        return DETECTED_TYPES.size();
     }
 
     /**
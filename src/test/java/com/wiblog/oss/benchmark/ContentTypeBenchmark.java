@@ -0,0 +1,78 @@
+package com.wiblog.oss.benchmark;
+
+import com.wiblog.oss.util.Util;
+import org.apache.tika.Tika;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 内容类型识别基准测试，对比每次新建 Tika、共享 Tika 与扩展名查表
+ * <p>
+ * 运行方式：mvn test-compile 后以测试类路径执行本类的 main 方法
+ *
+ * @author panwm
+ * @since 2024/10/6 14:00
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentTypeBenchmark {
+
+    private final Tika tika = new Tika();
+
+    /**
+     * 优化前的实现，每次调用重新加载 MIME 库
+     */
+    @Benchmark
+    public String newTikaPerCall() {
+        return new Tika().detect("a/b/photo.jpg");
+    }
+
+    @Benchmark
+    public String sharedTika() {
+        return tika.detect("a/b/photo.jpg");
+    }
+
+    /**
+     * 常用扩展名查表
+     */
+    @Benchmark
+    public String commonExtension() {
+        return Util.getContentType("a/b/photo.jpg");
+    }
+
+    /**
+     * 非常用扩展名首次识别后命中缓存
+     */
+    @Benchmark
+    public String detectedExtension() {
+        return Util.getContentType("a/b/model.stl");
+    }
+
+    /**
+     * 无扩展名时由 Tika 按文件名识别
+     */
+    @Benchmark
+    public String noExtension() {
+        return Util.getContentType("a/b/README");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ContentTypeBenchmark.class.getSimpleName()).build()).run();
+    }
+}
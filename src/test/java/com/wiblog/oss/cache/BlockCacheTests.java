@@ -0,0 +1,128 @@
+package com.wiblog.oss.cache;
+
+import com.wiblog.oss.util.ByteRange;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 分块读缓存
+ *
+ * @author panwm
+ * @since 2024/10/5 11:30
+ */
+class BlockCacheTests {
+
+    private static final int OBJECT_SIZE = 100;
+
+    private static final int BLOCK_SIZE = 16;
+
+    @TempDir
+    Path directory;
+
+    private final byte[] content = new byte[OBJECT_SIZE];
+
+    private final List<String> loaded = new ArrayList<>();
+
+    private final BlockCache.BlockLoader loader = range -> {
+        loaded.add(range.toString());
+        return ByteBuffer.wrap(Arrays.copyOfRange(content, (int) range.getStart(), (int) range.getEnd() + 1));
+    };
+
+    BlockCacheTests() {
+        for (int i = 0; i < OBJECT_SIZE; i++) {
+            content[i] = (byte) i;
+        }
+    }
+
+    /**
+     * 测试跨块读取时按区间截取首尾块，且首块立即加载、其余块读到时加载
+     */
+    @Test
+    void sliceAcrossBlocks() throws IOException {
+        BlockCache cache = new BlockCache(directory, BLOCK_SIZE, 1024);
+
+        InputStream in = cache.read("bucket", "a.txt", "etag", OBJECT_SIZE, new ByteRange(10, 49), loader);
+        Assertions.assertEquals(Arrays.asList("0-15"), loaded);
+
+        Assertions.assertArrayEquals(Arrays.copyOfRange(content, 10, 50), readAll(in));
+        Assertions.assertEquals(Arrays.asList("0-15", "16-31", "32-47", "48-63"), loaded);
+        Assertions.assertEquals(4 * BLOCK_SIZE, cache.getCurrentSize());
+    }
+
+    /**
+     * 测试末尾不足一块的区间以及命中已缓存的块
+     */
+    @Test
+    void sliceLastBlockAndHit() throws IOException {
+        BlockCache cache = new BlockCache(directory, BLOCK_SIZE, 1024);
+
+        Assertions.assertArrayEquals(Arrays.copyOfRange(content, 90, 100),
+                readAll(cache.read("bucket", "a.txt", "etag", OBJECT_SIZE, new ByteRange(90, 99), loader)));
+        Assertions.assertEquals(Arrays.asList("80-95", "96-99"), loaded);
+
+        // 单字节和块内区间命中缓存
+        Assertions.assertArrayEquals(new byte[]{96},
+                readAll(cache.read("bucket", "a.txt", "etag", OBJECT_SIZE, new ByteRange(96, 96), loader)));
+        Assertions.assertArrayEquals(Arrays.copyOfRange(content, 81, 95),
+                readAll(cache.read("bucket", "a.txt", "etag", OBJECT_SIZE, new ByteRange(81, 94), loader)));
+        Assertions.assertEquals(2, loaded.size());
+
+        // ETag 变化后不再命中
+        readAll(cache.read("bucket", "a.txt", "etag2", OBJECT_SIZE, new ByteRange(81, 94), loader));
+        Assertions.assertEquals(3, loaded.size());
+    }
+
+    /**
+     * 测试读取流仍在使用的块被淘汰时继续可读并计入总大小，关闭后释放
+     */
+    @Test
+    void evictWhileReading() throws IOException {
+        BlockCache cache = new BlockCache(directory, BLOCK_SIZE, 2 * BLOCK_SIZE);
+
+        InputStream in = cache.read("bucket", "a.txt", "etag", OBJECT_SIZE, new ByteRange(0, 15), loader);
+        readAll(cache.read("bucket", "b.txt", "etag", OBJECT_SIZE, new ByteRange(0, 31), loader));
+        // a.txt 的块被淘汰但仍被引用，继续淘汰 b.txt 的首块以满足上限
+        Assertions.assertEquals(2 * BLOCK_SIZE, cache.getCurrentSize());
+
+        Assertions.assertArrayEquals(Arrays.copyOfRange(content, 0, 16), readAll(in));
+        Assertions.assertEquals(BLOCK_SIZE, cache.getCurrentSize());
+
+        loaded.clear();
+        readAll(cache.read("bucket", "b.txt", "etag", OBJECT_SIZE, new ByteRange(16, 31), loader));
+        readAll(cache.read("bucket", "a.txt", "etag", OBJECT_SIZE, new ByteRange(0, 15), loader));
+        Assertions.assertEquals(Arrays.asList("0-15"), loaded);
+    }
+
+    /**
+     * 测试超过 maxSize 比例的区间不经过缓存
+     */
+    @Test
+    void bypassLargeRange() throws IOException {
+        BlockCache cache = new BlockCache(directory, BLOCK_SIZE, 64, 0.25);
+
+        Assertions.assertNull(cache.read("bucket", "a.txt", "etag", OBJECT_SIZE, new ByteRange(0, 16), loader));
+        Assertions.assertEquals(16, readAll(cache.read("bucket", "a.txt", "etag", OBJECT_SIZE, new ByteRange(0, 15), loader)).length);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[7];
+            int n;
+            while ((n = input.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
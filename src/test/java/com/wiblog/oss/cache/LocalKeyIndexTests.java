@@ -0,0 +1,144 @@
+package com.wiblog.oss.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 本地key索引
+ *
+ * @author panwm
+ * @since 2024/10/5 14:10
+ */
+class LocalKeyIndexTests {
+
+    private final LocalKeyIndex index = new LocalKeyIndex(100, 60_000);
+
+    @AfterEach
+    void destroy() {
+        index.shutdown();
+    }
+
+    /**
+     * 测试建立索引期间的写入在列举完成后重放，不被列举结果覆盖
+     */
+    @Test
+    void replayWritesDuringBuild() throws InterruptedException {
+        BlockingLoader loader = new BlockingLoader("data/a.txt", "data/b.txt", "data/c.txt");
+
+        // 首次查询在后台建立索引，由调用方直接列举
+        Assertions.assertNull(index.search("bucket", "data/", null, loader));
+        Assertions.assertTrue(loader.started.await(5, TimeUnit.SECONDS));
+
+        index.put("bucket", "data/x.txt", 10);
+        index.remove("bucket", "data/c.txt");
+        loader.resume.countDown();
+
+        Assertions.assertEquals(Arrays.asList("data/a.txt", "data/b.txt", "data/x.txt"), keys(await("data/", loader)));
+        Assertions.assertEquals(10, await("data/x", loader).get(0).size());
+    }
+
+    /**
+     * 测试重新列举失效前缀期间的写入同样被重放，其他前缀的查询不受影响
+     */
+    @Test
+    void replayWritesDuringPrefixRefresh() throws InterruptedException {
+        Assertions.assertNull(index.search("bucket", "", null, new BlockingLoader(false, "data/a.txt", "logs/a.log")));
+        Assertions.assertEquals(2, await("", null).size());
+
+        BlockingLoader loader = new BlockingLoader("data/a.txt", "data/b.txt");
+        index.invalidatePrefix("bucket", "data/");
+        // 首次建立的后台任务可能尚未退出，重新列举在之后的查询中才被调度
+        long deadline = System.currentTimeMillis() + 5000;
+        do {
+            Assertions.assertNull(index.search("bucket", "data/", null, loader));
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "重新列举未开始");
+        } while (!loader.started.await(10, TimeUnit.MILLISECONDS));
+
+        Assertions.assertEquals(Arrays.asList("logs/a.log"), keys(index.search("bucket", "logs/", null, loader)));
+        index.remove("bucket", "data/a.txt");
+        loader.resume.countDown();
+
+        Assertions.assertEquals(Arrays.asList("data/b.txt"), keys(await("data/", loader)));
+    }
+
+    /**
+     * 等待后台建立完成并返回查询结果
+     */
+    private List<S3Object> await(String prefix, KeyIndex.KeyLoader loader) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        List<S3Object> result;
+        while ((result = index.search("bucket", prefix, null, loader)) == null) {
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "建立索引超时");
+            Thread.sleep(10);
+        }
+        return result;
+    }
+
+    private static List<String> keys(List<S3Object> objects) {
+        return objects.stream().map(S3Object::key).collect(Collectors.toList());
+    }
+
+    /**
+     * 列举出首个key后暂停，直到 resume 被释放
+     */
+    private static class BlockingLoader implements KeyIndex.KeyLoader {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        private final CountDownLatch resume = new CountDownLatch(1);
+
+        private final boolean blocking;
+
+        private final List<String> keys;
+
+        BlockingLoader(String... keys) {
+            this(true, keys);
+        }
+
+        BlockingLoader(boolean blocking, String... keys) {
+            this.blocking = blocking;
+            this.keys = Arrays.asList(keys);
+        }
+
+        @Override
+        public Iterator<S3Object> list(String prefix) {
+            Iterator<String> iterator = keys.stream().filter(e -> e.startsWith(prefix)).iterator();
+            return new Iterator<S3Object>() {
+                private boolean first = true;
+
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public S3Object next() {
+                    if (!iterator.hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    if (!first && blocking) {
+                        try {
+                            resume.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    first = false;
+                    started.countDown();
+                    return S3Object.builder().key(iterator.next()).size(1L).lastModified(Instant.EPOCH).build();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.wiblog.oss.cache;
+
+import com.wiblog.oss.bean.ObjectInfo;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * 本地元数据缓存
+ *
+ * @author panwm
+ * @since 2024/10/6 18:40
+ */
+class LocalMetadataCacheTests {
+
+    /**
+     * 测试未命中、命中存在的对象和命中不存在的对象可区分，失效后恢复为未命中
+     */
+    @Test
+    void distinguishesMissHitAndNegative() {
+        LocalMetadataCache cache = new LocalMetadataCache(100, 60_000, 60_000);
+
+        CachedInfo miss = cache.get("bucket", "a.txt");
+        Assertions.assertFalse(miss.isPresent());
+        Assertions.assertFalse(miss.isNegative());
+        Assertions.assertNull(miss.getObjectInfo());
+
+        cache.put("bucket", "a.txt", ObjectInfo.builder().name("a.txt").build());
+        CachedInfo hit = cache.get("bucket", "a.txt");
+        Assertions.assertTrue(hit.isPresent());
+        Assertions.assertFalse(hit.isNegative());
+        Assertions.assertEquals("a.txt", hit.getObjectInfo().getName());
+
+        cache.put("bucket", "b.txt", null);
+        CachedInfo negative = cache.get("bucket", "b.txt");
+        Assertions.assertTrue(negative.isPresent());
+        Assertions.assertTrue(negative.isNegative());
+        Assertions.assertNull(negative.getObjectInfo());
+
+        cache.invalidatePrefix("bucket", "");
+        Assertions.assertFalse(cache.get("bucket", "a.txt").isPresent());
+        Assertions.assertFalse(cache.get("bucket", "b.txt").isPresent());
+    }
+
+    /**
+     * 测试不存在对象的过期时间为0时不缓存
+     */
+    @Test
+    void skipsNegativeWhenDisabled() {
+        LocalMetadataCache cache = new LocalMetadataCache(100, 60_000, 0);
+
+        cache.put("bucket", "b.txt", null);
+        Assertions.assertFalse(cache.get("bucket", "b.txt").isPresent());
+    }
+}
@@ -0,0 +1,31 @@
+package com.wiblog.oss.service;
+
+import com.wiblog.oss.bean.OssProperties;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 异步上传操作
+ *
+ * @author panwm
+ * @since 2024/10/6 17:20
+ */
+class AsyncPutOperationsTests {
+
+    /**
+     * 测试文件夹不存在时返回失败的 future，不在调用线程抛出
+     */
+    @Test
+    void putFolderFailsFuture() {
+        AsyncPutOperations put = new AsyncPutOperations(new OssProperties(), new InMemoryS3Client(), null);
+
+        CompletableFuture<Integer> future = put.putFolder("bucket", "data", new File("not-exists-folder"), false);
+
+        CompletionException e = Assertions.assertThrows(CompletionException.class, future::join);
+        Assertions.assertInstanceOf(IllegalArgumentException.class, e.getCause());
+    }
+}
@@ -0,0 +1,67 @@
+package com.wiblog.oss.service;
+
+import com.wiblog.oss.bean.OssProperties;
+import com.wiblog.oss.cache.LocalMetadataCache;
+import com.wiblog.oss.cache.MetadataCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 异步查询操作
+ *
+ * @author panwm
+ * @since 2024/10/6 17:30
+ */
+class AsyncQueryOperationsTests {
+
+    private final InMemoryS3Client client = new InMemoryS3Client();
+
+    private final MetadataCache metadataCache = new LocalMetadataCache(100, 60_000, 60_000);
+
+    private final QueryOperations query = new QueryOperations(properties(), client, null, new OssDependencies().setMetadataCache(metadataCache));
+
+    private final AsyncQueryOperations asyncQuery = new AsyncQueryOperations(properties(), client, null, new OssDependencies().setMetadataCache(metadataCache));
+
+    /**
+     * 测试同步与异步获取文件信息共用同一实现和元数据缓存，不存在的对象返回null
+     */
+    @Test
+    void objectInfoSharedWithSync() {
+        client.put("data/a.txt", "hello".getBytes(StandardCharsets.UTF_8));
+
+        Assertions.assertEquals(5, query.getObjectInfo("data/a.txt").getSize());
+        Assertions.assertEquals(5, asyncQuery.getObjectInfo("data/a.txt").join().getSize());
+        Assertions.assertEquals(1, client.headRequests.get());
+
+        Assertions.assertNull(asyncQuery.getObjectInfo("data/b.txt").join());
+        Assertions.assertNull(query.getObjectInfo("data/b.txt"));
+        Assertions.assertFalse(asyncQuery.checkExist("data/b.txt").join());
+        Assertions.assertEquals(2, client.headRequests.get());
+    }
+
+    /**
+     * 测试异步文件流与分段流
+     */
+    @Test
+    void inputStream() throws IOException {
+        client.put("data/a.txt", "hello".getBytes(StandardCharsets.UTF_8));
+
+        try (InputStream in = asyncQuery.getInputStream("data/a.txt").join()) {
+            Assertions.assertEquals("hello", StreamUtils.copyToString(in, StandardCharsets.UTF_8));
+        }
+        try (InputStream in = asyncQuery.getInputStream("bucket", "data/a.txt", "bytes=1-3").join()) {
+            Assertions.assertEquals("ell", StreamUtils.copyToString(in, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static OssProperties properties() {
+        OssProperties properties = new OssProperties();
+        properties.setBucketName("bucket");
+        return properties;
+    }
+}
@@ -0,0 +1,63 @@
+package com.wiblog.oss.service;
+
+import com.wiblog.oss.bean.OssProperties;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * 删除操作与上传操作的key规则
+ *
+ * @author panwm
+ * @since 2024/10/6 10:35
+ */
+class DeleteOperationsTests {
+
+    private static final String BUCKET = "bucket";
+
+    private final InMemoryS3Client client = new InMemoryS3Client();
+
+    private final PutOperations put = new PutOperations(new OssProperties(), client, null);
+
+    private final DeleteOperations delete = new DeleteOperations(new OssProperties(), client, null);
+
+    /**
+     * 测试上传无扩展名的key后用同一个名称删除
+     */
+    @Test
+    void putThenRemoveKeyWithoutExtension() {
+        put.putObjectForKey(BUCKET, "logs/2024/events", stream("event"));
+        Assertions.assertEquals(1, client.objects.size());
+
+        delete.removeObject(BUCKET, "logs/2024/events");
+        Assertions.assertTrue(client.objects.isEmpty());
+
+        put.mkdirs(BUCKET, "a/b");
+        delete.removeObject(BUCKET, "a\\b");
+        Assertions.assertTrue(client.objects.isEmpty());
+    }
+
+    /**
+     * 测试批量删除按列举得到的key原样删除
+     */
+    @Test
+    void removeObjectsUsesListedKeys() {
+        client.put("logs/2024/events", new byte[1]);
+        client.put("logs/2024/events.txt", new byte[1]);
+        put.putObjectForKey(BUCKET, "logs/2024/other", stream("other"));
+
+        delete.removeObjects(BUCKET, Arrays.asList("/logs/2024/events", "logs\\2024\\events.txt"));
+        Assertions.assertEquals(Collections.singleton("logs/2024/other/"), client.objects.keySet());
+
+        delete.removeObjects(BUCKET, client.objects.keySet().stream());
+        Assertions.assertTrue(client.objects.isEmpty());
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
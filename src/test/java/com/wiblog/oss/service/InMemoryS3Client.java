@@ -0,0 +1,293 @@
+package com.wiblog.oss.service;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import org.springframework.util.DigestUtils;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个存储桶的内存 S3 客户端，供操作类的单元测试使用
+ *
+ * @author panwm
+ * @since 2024/10/6 10:20
+ */
+class InMemoryS3Client implements S3AsyncClient {
+
+    /**
+     * 与 S3 一致按UTF-8字节排序
+     */
+    final NavigableMap<String, StoredObject> objects = new ConcurrentSkipListMap<>(InMemoryS3Client::compareUtf8);
+
+    final AtomicInteger listRequests = new AtomicInteger();
+
+    final AtomicInteger getRequests = new AtomicInteger();
+
+    final AtomicInteger headRequests = new AtomicInteger();
+
+    final List<CopyObjectRequest> copyRequests = new CopyOnWriteArrayList<>();
+
+    @Override
+    public CompletableFuture<PutObjectResponse> putObject(PutObjectRequest request, AsyncRequestBody body) {
+        return read(body).thenApply(bytes -> {
+            StoredObject object = put(request.key(), bytes);
+            object.contentType = request.contentType();
+            return PutObjectResponse.builder().eTag(object.eTag()).build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<HeadObjectResponse> headObject(HeadObjectRequest request) {
+        headRequests.incrementAndGet();
+        StoredObject object = objects.get(request.key());
+        if (object == null) {
+            return failed(NoSuchKeyException.builder().statusCode(404).message("Not Found").build());
+        }
+        return CompletableFuture.completedFuture(HeadObjectResponse.builder()
+                .contentLength((long) object.bytes.length)
+                .lastModified(object.lastModified)
+                .eTag(object.eTag())
+                .contentType(object.contentType)
+                .cacheControl(object.cacheControl)
+                .metadata(object.metadata)
+                .build());
+    }
+
+    @Override
+    public <T> CompletableFuture<T> getObject(GetObjectRequest request, AsyncResponseTransformer<GetObjectResponse, T> transformer) {
+        getRequests.incrementAndGet();
+        StoredObject object = objects.get(request.key());
+        if (object == null) {
+            return failed(NoSuchKeyException.builder().statusCode(404).message("Not Found").build());
+        }
+        if (request.ifMatch() != null && !request.ifMatch().equals(object.eTag())) {
+            return failed(S3Exception.builder().statusCode(412).message("Precondition Failed").build());
+        }
+        int start = 0;
+        int end = object.bytes.length - 1;
+        GetObjectResponse.Builder response = GetObjectResponse.builder().eTag(object.eTag()).contentType(object.contentType);
+        if (request.range() != null) {
+            String[] range = request.range().substring("bytes=".length()).split("-");
+            start = Integer.parseInt(range[0]);
+            end = Math.min(Integer.parseInt(range[1]), end);
+            if (start > end) {
+                return failed(S3Exception.builder().statusCode(416).message("Range Not Satisfiable").build());
+            }
+            response.contentRange("bytes " + start + "-" + end + "/" + object.bytes.length);
+        }
+        ByteBuffer content = ByteBuffer.wrap(Arrays.copyOfRange(object.bytes, start, end + 1));
+        CompletableFuture<T> future = transformer.prepare();
+        transformer.onResponse(response.contentLength((long) content.remaining()).build());
+        transformer.onStream(SdkPublisher.adapt(subscriber -> subscriber.onSubscribe(new Subscription() {
+            private boolean done;
+
+            @Override
+            public void request(long n) {
+                if (!done) {
+                    done = true;
+                    subscriber.onNext(content);
+                    subscriber.onComplete();
+                }
+            }
+
+            @Override
+            public void cancel() {
+                done = true;
+            }
+        })));
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<CopyObjectResponse> copyObject(CopyObjectRequest request) {
+        copyRequests.add(request);
+        StoredObject source = objects.get(request.sourceKey());
+        if (source == null) {
+            return failed(NoSuchKeyException.builder().statusCode(404).message("Not Found").build());
+        }
+        if (request.copySourceIfMatch() != null && !request.copySourceIfMatch().equals(source.eTag())) {
+            return failed(S3Exception.builder().statusCode(412).message("Precondition Failed").build());
+        }
+        StoredObject target = put(request.destinationKey(), source.bytes);
+        if (request.metadataDirective() == MetadataDirective.REPLACE) {
+            target.metadata = request.metadata();
+            target.contentType = request.contentType();
+            target.cacheControl = request.cacheControl();
+        } else {
+            target.metadata = source.metadata;
+            target.contentType = source.contentType;
+            target.cacheControl = source.cacheControl;
+        }
+        return CompletableFuture.completedFuture(CopyObjectResponse.builder().build());
+    }
+
+    @Override
+    public CompletableFuture<DeleteObjectResponse> deleteObject(DeleteObjectRequest request) {
+        objects.remove(request.key());
+        return CompletableFuture.completedFuture(DeleteObjectResponse.builder().build());
+    }
+
+    @Override
+    public CompletableFuture<DeleteObjectsResponse> deleteObjects(DeleteObjectsRequest request) {
+        for (ObjectIdentifier object : request.delete().objects()) {
+            objects.remove(object.key());
+        }
+        return CompletableFuture.completedFuture(DeleteObjectsResponse.builder().build());
+    }
+
+    @Override
+    public CompletableFuture<ListObjectsV2Response> listObjectsV2(ListObjectsV2Request request) {
+        listRequests.incrementAndGet();
+        String prefix = request.prefix() == null ? "" : request.prefix();
+        String token = request.continuationToken();
+        int maxKeys = request.maxKeys() == null ? 1000 : request.maxKeys();
+        List<S3Object> contents = new ArrayList<>();
+        List<CommonPrefix> commonPrefixes = new ArrayList<>();
+        String last = null;
+        boolean truncated = false;
+        for (String key : token == null ? objects.tailMap(prefix, true).keySet() : objects.tailMap(token, false).keySet()) {
+            if (!key.startsWith(prefix)) {
+                break;
+            }
+            if (token != null && request.delimiter() != null && token.endsWith(request.delimiter()) && key.startsWith(token)) {
+                continue;
+            }
+            String rest = key.substring(prefix.length());
+            int index = request.delimiter() == null ? -1 : rest.indexOf(request.delimiter());
+            String entry = index < 0 ? key : prefix + rest.substring(0, index + 1);
+            if (entry.equals(last)) {
+                continue;
+            }
+            if (contents.size() + commonPrefixes.size() == maxKeys) {
+                truncated = true;
+                break;
+            }
+            if (index < 0) {
+                StoredObject object = objects.get(key);
+                contents.add(S3Object.builder()
+                        .key(key)
+                        .size((long) object.bytes.length)
+                        .lastModified(object.lastModified)
+                        .eTag(object.eTag())
+                        .build());
+            } else {
+                commonPrefixes.add(CommonPrefix.builder().prefix(entry).build());
+            }
+            last = entry;
+        }
+        return CompletableFuture.completedFuture(ListObjectsV2Response.builder()
+                .contents(contents)
+                .commonPrefixes(commonPrefixes)
+                .isTruncated(truncated)
+                .nextContinuationToken(truncated ? last : null)
+                .build());
+    }
+
+    StoredObject put(String key, byte[] bytes) {
+        StoredObject object = new StoredObject(bytes);
+        objects.put(key, object);
+        return object;
+    }
+
+    @Override
+    public String serviceName() {
+        return "s3";
+    }
+
+    @Override
+    public void close() {
+    }
+
+    static <T> CompletableFuture<T> failed(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    /**
+     * 读取请求体的全部内容
+     */
+    static CompletableFuture<byte[]> read(AsyncRequestBody body) {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.subscribe(new Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                s.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer buffer) {
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                out.write(bytes, 0, bytes.length);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                future.completeExceptionally(t);
+            }
+
+            @Override
+            public void onComplete() {
+                future.complete(out.toByteArray());
+            }
+        });
+        return future;
+    }
+
+    private static int compareUtf8(String a, String b) {
+        byte[] x = a.getBytes(StandardCharsets.UTF_8);
+        byte[] y = b.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < Math.min(x.length, y.length); i++) {
+            if (x[i] != y[i]) {
+                return Integer.compare(x[i] & 0xFF, y[i] & 0xFF);
+            }
+        }
+        return Integer.compare(x.length, y.length);
+    }
+
+    static class StoredObject {
+
+        final byte[] bytes;
+
+        Instant lastModified = Instant.now();
+
+        Map<String, String> metadata = Collections.emptyMap();
+
+        String contentType;
+
+        String cacheControl;
+
+        /**
+         * 指定的ETag，为null时与 S3 普通上传一致取内容MD5
+         */
+        String eTag;
+
+        StoredObject(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        String eTag() {
+            return "\"" + (eTag != null ? eTag : DigestUtils.md5DigestAsHex(bytes)) + "\"";
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.wiblog.oss.service;
+
+import com.wiblog.oss.bean.ObjectTreeNode;
+import com.wiblog.oss.util.Util;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 优化前逐级线性查找文件夹的目录树构建方式，作为 QueryOperations.buildTree 的对照
+ *
+ * @author panwm
+ * @since 2024/10/6 15:10
+ */
+class LegacyTreeBuilder {
+
+    private final String domain;
+
+    LegacyTreeBuilder(String domain) {
+        this.domain = domain;
+    }
+
+    ObjectTreeNode buildTree(List<S3Object> objectList, String objectName) {
+        String rootName;
+        if (Util.isBlank(objectName)) {
+            rootName = "";
+        } else {
+            int i = objectName.lastIndexOf("/");
+            rootName = (i > 0) ? objectName.substring(i + 1) : objectName;
+        }
+
+        ObjectTreeNode root = new ObjectTreeNode(rootName, objectName, domain + objectName, null, "folder", 0, null);
+
+        for (S3Object object : objectList) {
+            if (object.key().startsWith(objectName + "/")) {
+                String remainingPath = object.key().substring(objectName.length() + 1);
+                addNode(root, remainingPath, object);
+            } else if (!Util.isBlank(objectName)) {
+                addNode(root, object.key(), object);
+            }
+        }
+
+        return root;
+    }
+
+    private void addNode(ObjectTreeNode parentNode, String remainingPath, S3Object object) {
+        int slashIndex = remainingPath.indexOf('/');
+        if (slashIndex == -1) {
+            if (Util.isBlank(remainingPath)) {
+                return;
+            }
+            ObjectTreeNode fileNode = new ObjectTreeNode(remainingPath, object.key(), domain + object.key(),
+                    Date.from(object.lastModified()), "file", object.size(), Util.getExtension(object.key()));
+            parentNode.addChild(fileNode);
+        } else {
+            String folderName = remainingPath.substring(0, slashIndex);
+            String newRemainingPath = remainingPath.substring(slashIndex + 1);
+
+            ObjectTreeNode folderNode = findFolderNode(parentNode.getChildren(), folderName);
+            if (folderNode == null) {
+                String uri = Util.isBlank(parentNode.getUri()) ? folderName : parentNode.getUri() + "/" + folderName;
+                folderNode = new ObjectTreeNode(folderName, uri, domain + uri, null, "folder", 0, null);
+                parentNode.addChild(folderNode);
+            }
+
+            addNode(folderNode, newRemainingPath, object);
+        }
+    }
+
+    private ObjectTreeNode findFolderNode(List<ObjectTreeNode> nodes, String folderName) {
+        if (nodes == null) {
+            return null;
+        }
+        for (ObjectTreeNode node : nodes) {
+            if (node.getName().equals(folderName) && "folder".equals(node.getType())) {
+                return node;
+            }
+        }
+        return null;
+    }
+}
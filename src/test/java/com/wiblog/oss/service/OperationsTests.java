@@ -0,0 +1,175 @@
+package com.wiblog.oss.service;
+
+import com.wiblog.oss.bean.BatchResult;
+import com.wiblog.oss.bean.OssProperties;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Error;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * 分组、限流执行与批量删除引擎
+ *
+ * @author panwm
+ * @since 2024/10/5 11:05
+ */
+class OperationsTests {
+
+    /**
+     * 测试按固定大小分组，且只按需读取
+     */
+    @Test
+    void partition() {
+        AtomicInteger consumed = new AtomicInteger();
+        Iterator<Integer> items = IntStream.range(0, 2501).peek(i -> consumed.incrementAndGet()).iterator();
+        Iterator<List<Integer>> batches = Operations.partition(items, 1000);
+
+        Assertions.assertTrue(batches.hasNext());
+        List<Integer> first = batches.next();
+        Assertions.assertEquals(1000, first.size());
+        Assertions.assertEquals(0, first.get(0));
+        Assertions.assertTrue(consumed.get() <= 1001);
+
+        Assertions.assertEquals(1000, batches.next().size());
+        List<Integer> last = batches.next();
+        Assertions.assertEquals(501, last.size());
+        Assertions.assertEquals(2500, last.get(500));
+        Assertions.assertFalse(batches.hasNext());
+        Assertions.assertThrows(NoSuchElementException.class, batches::next);
+
+        Assertions.assertFalse(Operations.partition(Collections.emptyIterator(), 1000).hasNext());
+    }
+
+    /**
+     * 测试异步限流执行不阻塞调用线程，同时执行的任务数不超过并发度
+     */
+    @Test
+    void runBoundedAsyncLimitsConcurrency() throws Exception {
+        List<CompletableFuture<Void>> started = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        CompletableFuture<Void> done = Operations.runBoundedAsync(IntStream.range(0, 10).iterator(), 3, i -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            started.add(future);
+            return future.whenComplete((r, e) -> running.decrementAndGet());
+        });
+
+        Assertions.assertEquals(3, started.size());
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertFalse(done.isDone());
+            started.get(i).complete(null);
+        }
+        done.get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(10, started.size());
+        Assertions.assertEquals(3, maxRunning.get());
+
+        // 同步完成的任务不递归提交
+        AtomicInteger count = new AtomicInteger();
+        Operations.runBoundedAsync(IntStream.range(0, 100_000).iterator(), 4, i -> {
+            count.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        }).get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(100_000, count.get());
+    }
+
+    /**
+     * 测试任一任务失败后不再提交新任务，等已提交任务结束后以首个异常结束
+     */
+    @Test
+    void runBoundedAsyncStopsOnFailure() {
+        List<CompletableFuture<Void>> started = new ArrayList<>();
+        CompletableFuture<Void> done = Operations.runBoundedAsync(IntStream.range(0, 10).iterator(), 2, i -> {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            started.add(future);
+            return future;
+        });
+
+        started.get(0).completeExceptionally(new IllegalStateException("part 1"));
+        Assertions.assertEquals(2, started.size());
+        Assertions.assertFalse(done.isDone());
+        started.get(1).complete(null);
+
+        CompletionException e = Assertions.assertThrows(CompletionException.class, done::join);
+        Assertions.assertEquals("part 1", e.getCause().getMessage());
+        Assertions.assertEquals(2, started.size());
+    }
+
+    /**
+     * 测试单个对象失败和整批请求失败均记录到失败列表，不中断其余批次
+     */
+    @Test
+    void deleteKeysCollectsErrors() {
+        DeleteClient client = new DeleteClient();
+        Operations operations = new Operations(new OssProperties(), client, null) {
+        };
+        List<String> keys = IntStream.range(0, 2500)
+                .mapToObj(i -> String.format("data/%04d.txt", i))
+                .collect(Collectors.toList());
+
+        BatchResult result = operations.deleteKeys("bucket", keys.iterator());
+
+        Assertions.assertEquals(3, client.requests.get());
+        // 第二批整体失败，第一批和第三批各有一个对象被拒绝
+        Assertions.assertEquals(1000 + 2, result.getFailed().size());
+        Assertions.assertEquals(2500 - 1000 - 2, result.getSuccessCount());
+        Assertions.assertFalse(result.isSuccess());
+        Assertions.assertEquals("AccessDenied: denied", result.getFailed().get("data/0007.txt"));
+        Assertions.assertEquals("AccessDenied: denied", result.getFailed().get("data/2007.txt"));
+        Assertions.assertEquals("network down", result.getFailed().get("data/1000.txt"));
+        Assertions.assertEquals("network down", result.getFailed().get("data/1999.txt"));
+        Assertions.assertFalse(result.getFailed().containsKey("data/0008.txt"));
+    }
+
+    /**
+     * 拒绝以 007.txt 结尾的对象，包含 data/1000.txt 的整批请求失败
+     */
+    private static class DeleteClient implements S3AsyncClient {
+
+        private final AtomicInteger requests = new AtomicInteger();
+
+        @Override
+        public CompletableFuture<DeleteObjectsResponse> deleteObjects(DeleteObjectsRequest request) {
+            requests.incrementAndGet();
+            List<ObjectIdentifier> objects = request.delete().objects();
+            if (objects.stream().anyMatch(e -> "data/1000.txt".equals(e.key()))) {
+                CompletableFuture<DeleteObjectsResponse> future = new CompletableFuture<>();
+                future.completeExceptionally(SdkClientException.create("network down"));
+                return future;
+            }
+            List<S3Error> errors = new ArrayList<>();
+            for (ObjectIdentifier object : objects) {
+                if (object.key().endsWith("007.txt")) {
+                    errors.add(S3Error.builder().key(object.key()).code("AccessDenied").message("denied").build());
+                }
+            }
+            return CompletableFuture.completedFuture(DeleteObjectsResponse.builder().errors(errors).build());
+        }
+
+        @Override
+        public String serviceName() {
+            return "s3";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.wiblog.oss.service;
+
+import com.wiblog.oss.bean.BatchResult;
+import com.wiblog.oss.bean.OssProperties;
+import com.wiblog.oss.bean.chunk.Chunk;
+import com.wiblog.oss.bean.chunk.ChunkMerge;
+import com.wiblog.oss.bean.chunk.ChunkProcess;
+import com.wiblog.oss.bean.chunk.ChunkTarget;
+import com.wiblog.oss.util.BufferPool;
+import com.wiblog.oss.store.LocalHashIndex;
+import com.wiblog.oss.store.LocalUploadSessionStore;
+import com.wiblog.oss.store.UploadSessionStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.DigestUtils;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.UploadPartCopyRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartCopyResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 上传操作
+ *
+ * @author panwm
+ * @since 2024/10/6 11:10
+ */
+class PutOperationsTests {
+
+    private static final String BUCKET = "bucket";
+
+    private static final byte[] CONTENT = "hello".getBytes(StandardCharsets.UTF_8);
+
+    private static final String HASH = DigestUtils.md5DigestAsHex(CONTENT);
+
+    private final Map<Integer, byte[]> parts = new ConcurrentHashMap<>();
+
+    private final InMemoryS3Client client = new InMemoryS3Client() {
+        @Override
+        public CompletableFuture<UploadPartResponse> uploadPart(UploadPartRequest request, AsyncRequestBody body) {
+            return read(body).thenApply(bytes -> {
+                parts.put(request.partNumber(), bytes);
+                return UploadPartResponse.builder().eTag("\"part-" + request.partNumber() + "\"").build();
+            });
+        }
+
+        @Override
+        public CompletableFuture<CompleteMultipartUploadResponse> completeMultipartUpload(CompleteMultipartUploadRequest request) {
+            StoredObject object = put(request.key(), CONTENT);
+            Map<String, String> metadata = new HashMap<>();
+            metadata.put("owner", "panwm");
+            object.metadata = metadata;
+            object.contentType = "text/plain";
+            object.cacheControl = "max-age=60";
+            return CompletableFuture.completedFuture(CompleteMultipartUploadResponse.builder().build());
+        }
+    };
+
+    private final UploadSessionStore sessionStore = new LocalUploadSessionStore(10, 60_000);
+
+    private final LocalHashIndex hashIndex = new LocalHashIndex(10);
+
+    /**
+     * 测试默认不校验hash，合并后不重新读取对象
+     */
+    @Test
+    void mergeSkipsHashVerifyByDefault() {
+        PutOperations put = putOperations(false);
+
+        put.merge(chunkMerge());
+
+        Assertions.assertEquals(0, client.getRequests.get());
+        Assertions.assertTrue(client.copyRequests.isEmpty());
+        Assertions.assertNull(hashIndex.get(BUCKET, HASH));
+    }
+
+    /**
+     * 测试开启校验后写入hash元数据，并保留原有的用户元数据和请求头
+     */
+    @Test
+    void mergeVerifiesHashAndKeepsMetadata() throws InterruptedException {
+        PutOperations put = putOperations(true);
+
+        put.merge(chunkMerge());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (hashIndex.get(BUCKET, HASH) == null) {
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "hash校验超时");
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals("upload/a.txt", hashIndex.get(BUCKET, HASH));
+        InMemoryS3Client.StoredObject object = client.objects.get("upload/a.txt");
+        Assertions.assertEquals(HASH, object.metadata.get(PutOperations.HASH_METADATA));
+        Assertions.assertEquals("panwm", object.metadata.get("owner"));
+        Assertions.assertEquals("text/plain", object.contentType);
+        Assertions.assertEquals("max-age=60", object.cacheControl);
+    }
+
+    /**
+     * 测试大于单个缓冲区的分片由多个池化缓冲区承接，内容完整且缓冲区全部归还
+     */
+    @Test
+    void chunkLargerThanBuffer() {
+        PutOperations put = putOperations(false);
+        BufferPool pool = put.getBufferPool();
+        byte[] content = new byte[pool.getBufferSize() * 2 + 123];
+        new Random(13).nextBytes(content);
+
+        Chunk chunk = new Chunk();
+        chunk.setPath("upload");
+        chunk.setFilename("a.txt");
+        chunk.setUploadId("upload-1");
+        chunk.setChunkNumber(2);
+        chunk.setFile(new MockMultipartFile("file", content));
+        ChunkTarget target = put.chunk(chunk);
+
+        Assertions.assertEquals("part-2", target.getEtag());
+        Assertions.assertArrayEquals(content, parts.get(2));
+        Assertions.assertEquals(3L * pool.getBufferSize(), pool.getAllocatedBytes());
+        Assertions.assertEquals(3, pool.getAvailable());
+        Assertions.assertEquals(2, sessionStore.get("upload-1").getChunkList().size());
+    }
+
+    /**
+     * 测试超过5GB的对象异步分片拷贝，分片失败时终止分片上传完成后才结束
+     */
+    @Test
+    void multipartCopyAbortsBeforeFailing() {
+        long size = 6L * 1024 * 1024 * 1024;
+        AtomicInteger partCopies = new AtomicInteger();
+        AtomicBoolean failPart = new AtomicBoolean();
+        AtomicBoolean completed = new AtomicBoolean();
+        AtomicBoolean aborted = new AtomicBoolean();
+        InMemoryS3Client copyClient = new InMemoryS3Client() {
+            @Override
+            public CompletableFuture<ListObjectsV2Response> listObjectsV2(ListObjectsV2Request request) {
+                return super.listObjectsV2(request).thenApply(r -> r.toBuilder()
+                        .contents(r.contents().stream().map(e -> e.toBuilder().size(size).build()).collect(Collectors.toList()))
+                        .build());
+            }
+
+            @Override
+            public CompletableFuture<CreateMultipartUploadResponse> createMultipartUpload(CreateMultipartUploadRequest request) {
+                return CompletableFuture.completedFuture(CreateMultipartUploadResponse.builder().uploadId("copy-1").build());
+            }
+
+            @Override
+            public CompletableFuture<UploadPartCopyResponse> uploadPartCopy(UploadPartCopyRequest request) {
+                partCopies.incrementAndGet();
+                if (failPart.get() && request.partNumber() == 7) {
+                    return failed(SdkClientException.create("copy failed"));
+                }
+                return CompletableFuture.supplyAsync(() -> UploadPartCopyResponse.builder()
+                        .copyPartResult(b -> b.eTag("\"" + request.partNumber() + "\""))
+                        .build());
+            }
+
+            @Override
+            public CompletableFuture<CompleteMultipartUploadResponse> completeMultipartUpload(CompleteMultipartUploadRequest request) {
+                List<CompletedPart> parts = request.multipartUpload().parts();
+                for (int i = 0; i < parts.size(); i++) {
+                    Assertions.assertEquals(i + 1, parts.get(i).partNumber());
+                }
+                completed.set(true);
+                return CompletableFuture.completedFuture(CompleteMultipartUploadResponse.builder().build());
+            }
+
+            @Override
+            public CompletableFuture<AbortMultipartUploadResponse> abortMultipartUpload(AbortMultipartUploadRequest request) {
+                Assertions.assertEquals("copy-1", request.uploadId());
+                // 终止请求较慢，拷贝结果需等待其完成
+                return CompletableFuture.supplyAsync(() -> {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    aborted.set(true);
+                    return AbortMultipartUploadResponse.builder().build();
+                });
+            }
+        };
+        copyClient.put("src/big.bin", CONTENT);
+        OssProperties properties = new OssProperties();
+        properties.setBucketName(BUCKET);
+        PutOperations put = new PutOperations(properties, copyClient, null);
+
+        BatchResult result = put.copyFolder("src", "dst");
+        Assertions.assertTrue(result.isSuccess());
+        Assertions.assertTrue(completed.get());
+        Assertions.assertEquals(615, partCopies.get());
+
+        completed.set(false);
+        failPart.set(true);
+        result = put.copyFolder("src", "dst2");
+        Assertions.assertEquals("copy failed", result.getFailed().get("src/big.bin"));
+        Assertions.assertTrue(aborted.get());
+        Assertions.assertFalse(completed.get());
+    }
+
+    private PutOperations putOperations(boolean hashVerify) {
+        OssProperties properties = new OssProperties();
+        properties.setBucketName(BUCKET);
+        properties.getUpload().setHashVerify(hashVerify);
+        sessionStore.create(new ChunkProcess().setUploadId("upload-1").setObjectKey("upload/a.txt").setHash(HASH.toUpperCase()));
+        sessionStore.addPart("upload-1", new ChunkProcess.ChunkPart("\"etag\"", 1));
+        return new PutOperations(properties, client, null, new OssDependencies().setUploadSessionStore(sessionStore).setHashIndex(hashIndex));
+    }
+
+    private static ChunkMerge chunkMerge() {
+        ChunkMerge merge = new ChunkMerge();
+        merge.setPath("upload");
+        merge.setFilename("a.txt");
+        merge.setUploadId("upload-1");
+        return merge;
+    }
+}
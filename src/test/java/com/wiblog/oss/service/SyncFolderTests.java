@@ -0,0 +1,250 @@
+package com.wiblog.oss.service;
+
+import com.wiblog.oss.bean.BatchResult;
+import com.wiblog.oss.bean.OssProperties;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+import software.amazon.awssdk.transfer.s3.model.CompletedFileUpload;
+import software.amazon.awssdk.transfer.s3.model.FileUpload;
+import software.amazon.awssdk.transfer.s3.model.ResumableFileUpload;
+import software.amazon.awssdk.transfer.s3.model.UploadFileRequest;
+import software.amazon.awssdk.transfer.s3.progress.TransferProgress;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 增量同步文件夹
+ *
+ * @author panwm
+ * @since 2024/10/6 16:40
+ */
+class SyncFolderTests {
+
+    private static final Instant PAST = Instant.now().minusSeconds(3600);
+
+    private static final Instant FUTURE = Instant.now().plusSeconds(3600);
+
+    /**
+     * 码点顺序与 String 的UTF-16顺序不同的两个文件名
+     */
+    private static final String HALFWIDTH = "｡.txt";
+
+    private static final String EMOJI = "😀.txt";
+
+    @TempDir
+    Path folder;
+
+    private final InMemoryS3Client client = new InMemoryS3Client();
+
+    private final List<String> uploaded = new CopyOnWriteArrayList<>();
+
+    private final S3TransferManager transferManager = new S3TransferManager() {
+        @Override
+        public FileUpload uploadFile(UploadFileRequest request) {
+            CompletableFuture<CompletedFileUpload> future = new CompletableFuture<>();
+            try {
+                client.put(request.putObjectRequest().key(), Files.readAllBytes(request.source()));
+                uploaded.add(request.putObjectRequest().key());
+                future.complete(CompletedFileUpload.builder().response(PutObjectResponse.builder().build()).build());
+            } catch (IOException e) {
+                future.completeExceptionally(e);
+            }
+            return new FileUpload() {
+                @Override
+                public ResumableFileUpload pause() {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public CompletableFuture<CompletedFileUpload> completionFuture() {
+                    return future;
+                }
+
+                @Override
+                public TransferProgress progress() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    /**
+     * 测试本地文件按码点排序，与 S3 的UTF-8字节顺序一致
+     */
+    @Test
+    void localOrderMatchesListing() throws IOException {
+        write("b.txt", "b", PAST);
+        write("a/c.txt", "c", PAST);
+        write("a-b.txt", "ab", PAST);
+        write(HALFWIDTH, "h", PAST);
+        write(EMOJI, "e", PAST);
+
+        TreeMap<String, File> local = PutOperations.listLocal(folder, "sync/");
+
+        Assertions.assertEquals(Arrays.asList("sync/a-b.txt", "sync/a/c.txt", "sync/b.txt", "sync/" + HALFWIDTH, "sync/" + EMOJI),
+                new ArrayList<>(local.keySet()));
+    }
+
+    /**
+     * 测试分页归并后只上传新增和修改的文件，只删除本地已不存在的远程文件，保留文件夹标记
+     */
+    @Test
+    void uploadsChangedAndDeletesRemoved() throws IOException {
+        write("same.txt", "same", PAST);
+        remote("sync/same.txt", "same", FUTURE);
+        write("new.txt", "new", PAST);
+        write("size.txt", "longer", PAST);
+        remote("sync/size.txt", "short", FUTURE);
+        write("touched.txt", "aaa", FUTURE);
+        remote("sync/touched.txt", "aaa", PAST);
+        remote("sync/a.txt", "gone", PAST);
+        remote("sync/dir/", "", PAST);
+        remote("sync/dir/gone.txt", "gone", PAST);
+        remote("sync/zz.txt", "gone", PAST);
+        remote("other/keep.txt", "keep", PAST);
+
+        BatchResult result = putOperations(2).syncFolder("bucket", "sync", folder.toFile(), true, false);
+
+        Assertions.assertEquals(set("sync/new.txt", "sync/size.txt", "sync/touched.txt"), new HashSet<>(uploaded));
+        Assertions.assertEquals(6, result.getSuccessCount());
+        Assertions.assertTrue(result.getFailed().isEmpty());
+        Assertions.assertEquals(set("other/keep.txt", "sync/dir/", "sync/new.txt", "sync/same.txt", "sync/size.txt",
+                "sync/touched.txt"), client.objects.keySet());
+        // 每页2个对象，前缀下共7个对象
+        Assertions.assertEquals(4, client.listRequests.get());
+    }
+
+    /**
+     * 测试码点顺序与UTF-16顺序不同的文件名按 S3 顺序归并，不被误判为新增和删除
+     */
+    @Test
+    void mergesInCodePointOrder() throws IOException {
+        write(HALFWIDTH, "h", PAST);
+        remote("sync/" + HALFWIDTH, "h", FUTURE);
+        write(EMOJI, "e", PAST);
+        remote("sync/" + EMOJI, "e", FUTURE);
+
+        BatchResult result = putOperations(1).syncFolder("bucket", "sync", folder.toFile(), true, false);
+
+        Assertions.assertTrue(uploaded.isEmpty());
+        Assertions.assertEquals(0, result.getSuccessCount());
+        Assertions.assertEquals(set("sync/" + HALFWIDTH, "sync/" + EMOJI), client.objects.keySet());
+    }
+
+    /**
+     * 测试不删除时保留本地已不存在的远程文件
+     */
+    @Test
+    void keepsRemovedWhenNotDeleting() throws IOException {
+        write("a.txt", "a", PAST);
+        remote("sync/a.txt", "a", FUTURE);
+        remote("sync/b.txt", "b", PAST);
+
+        BatchResult result = putOperations(1000).syncFolder("bucket", "sync/", folder.toFile(), false, false);
+
+        Assertions.assertTrue(uploaded.isEmpty());
+        Assertions.assertEquals(0, result.getSuccessCount());
+        Assertions.assertTrue(client.objects.containsKey("sync/b.txt"));
+    }
+
+    /**
+     * 测试开启hash校验后大小相同的文件按MD5比较，分片上传的ETag仍按修改时间比较
+     */
+    @Test
+    void hashDecidesForSameSize() throws IOException {
+        // 修改时间判定未修改，但内容不同
+        write("changed.txt", "abc", PAST);
+        remote("sync/changed.txt", "xyz", FUTURE);
+        // 修改时间判定已修改，但内容相同
+        write("touched.txt", "abc", FUTURE);
+        remote("sync/touched.txt", "abc", PAST);
+        // 分片上传的ETag不是MD5
+        write("multipart.txt", "abc", FUTURE);
+        remote("sync/multipart.txt", "abc", PAST).eTag = "0123456789abcdef0123456789abcdef-2";
+        write("multipart-old.txt", "abc", PAST);
+        remote("sync/multipart-old.txt", "xyz", FUTURE).eTag = "0123456789abcdef0123456789abcdef-2";
+
+        putOperations(1000).syncFolder("bucket", "sync", folder.toFile(), false, true);
+        Assertions.assertEquals(set("sync/changed.txt", "sync/multipart.txt"), new HashSet<>(uploaded));
+
+        // 不开启时只比较大小和修改时间
+        uploaded.clear();
+        client.objects.clear();
+        remote("sync/changed.txt", "xyz", FUTURE);
+        remote("sync/touched.txt", "abc", PAST);
+        putOperations(1000).syncFolder("bucket", "sync", folder.toFile(), false, false);
+        Assertions.assertEquals(set("sync/touched.txt", "sync/multipart.txt", "sync/multipart-old.txt"), new HashSet<>(uploaded));
+    }
+
+    /**
+     * 测试首页列举在遍历本地目录前发出
+     */
+    @Test
+    void prefetchStartsListing() {
+        ListObjectsV2Request request = ListObjectsV2Request.builder().bucket("bucket").prefix("sync/").build();
+        remote("sync/a.txt", "a", PAST);
+
+        ObjectListIterator iterator = new ObjectListIterator(client, request).prefetch();
+        Assertions.assertEquals(1, client.listRequests.get());
+        Assertions.assertEquals("sync/a.txt", iterator.next().key());
+        Assertions.assertFalse(iterator.hasNext());
+        Assertions.assertEquals(1, client.listRequests.get());
+    }
+
+    private PutOperations putOperations(int listPageSize) {
+        OssProperties properties = new OssProperties();
+        properties.setBucketName("bucket");
+        properties.setListPageSize(listPageSize);
+        return new PutOperations(properties, client, transferManager);
+    }
+
+    private void write(String name, String content, Instant lastModified) throws IOException {
+        Path file;
+        try {
+            file = folder.resolve(name);
+        } catch (InvalidPathException e) {
+            // 文件名编码不是UTF-8的环境无法创建非ASCII文件名
+            Assumptions.assumeTrue(false, e.getMessage());
+            return;
+        }
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        Assertions.assertTrue(file.toFile().setLastModified(lastModified.toEpochMilli()));
+    }
+
+    private InMemoryS3Client.StoredObject remote(String key, String content, Instant lastModified) {
+        InMemoryS3Client.StoredObject object = client.put(key, content.getBytes(StandardCharsets.UTF_8));
+        object.lastModified = lastModified;
+        return object;
+    }
+
+    private static Set<String> set(String... values) {
+        Set<String> set = new HashSet<>();
+        Collections.addAll(set, values);
+        return set;
+    }
+}
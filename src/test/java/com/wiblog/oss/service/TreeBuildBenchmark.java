@@ -0,0 +1,89 @@
+package com.wiblog.oss.service;
+
+import com.wiblog.oss.bean.ObjectTreeNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 目录树构建基准测试，对比按文件夹索引查找与优化前逐级线性查找
+ * <p>
+ * 以有序的合成列举结果模拟百万级key的列举，key 平均分布在 folders 个文件夹下；
+ * 运行方式：mvn test-compile 后以测试类路径执行本类的 main 方法
+ *
+ * @author panwm
+ * @since 2024/10/6 15:30
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class TreeBuildBenchmark {
+
+    @Param({"1000000"})
+    public int keys;
+
+    /**
+     * 文件夹数，优化前的实现每个key需要在同级文件夹中线性查找
+     */
+    @Param({"100", "1000"})
+    public int folders;
+
+    private List<S3Object> objects;
+
+    private QueryOperations query;
+
+    private LegacyTreeBuilder legacy;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        query = new QueryOperations(TreeBuildTests.properties(), new InMemoryS3Client(), null);
+        legacy = new LegacyTreeBuilder(query.getDomain());
+        objects = new ArrayList<>(keys);
+        Instant now = Instant.now();
+        int files = keys / folders;
+        for (int i = 0; i < folders; i++) {
+            for (int j = 0; j < files; j++) {
+                String key = String.format("data/d%05d/f%07d.txt", i, j);
+                objects.add(S3Object.builder().key(key).size((long) j).lastModified(now).build());
+            }
+        }
+    }
+
+    @Benchmark
+    public ObjectTreeNode indexed() {
+        return query.buildTree(objects, "data");
+    }
+
+    /**
+     * 优化前的实现，每个key在各级子节点中线性查找文件夹
+     */
+    @Benchmark
+    public ObjectTreeNode legacy() {
+        return legacy.buildTree(objects, "data");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TreeBuildBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,142 @@
+package com.wiblog.oss.service;
+
+import com.wiblog.oss.bean.ObjectTreeNode;
+import com.wiblog.oss.bean.OssProperties;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 目录树构建
+ *
+ * @author panwm
+ * @since 2024/10/6 15:20
+ */
+class TreeBuildTests {
+
+    private static final String[] SEGMENTS = {"a", "b", "data", "img", "a.b", "x.txt", "1.png", "", " "};
+
+    private static final String[] ROOTS = {"", "a", "data", "a/b", "data/"};
+
+    private final QueryOperations query = new QueryOperations(properties(), new InMemoryS3Client(), null);
+
+    private final LegacyTreeBuilder legacy = new LegacyTreeBuilder(query.getDomain());
+
+    /**
+     * 测试随机key集合（含空段、重复斜杠、文件夹标记和根目录外的key）的构建结果与优化前一致
+     */
+    @Test
+    void matchesLegacyBuilderOnRandomKeys() {
+        Random random = new Random(20241006L);
+        for (int round = 0; round < 500; round++) {
+            List<S3Object> objects = randomObjects(random, 1 + random.nextInt(200));
+            // 列举结果按key有序，关键字过滤后的结果同样有序；乱序时同样需要一致
+            if (random.nextInt(4) == 0) {
+                Collections.shuffle(objects, random);
+            } else {
+                objects.sort(Comparator.comparing(S3Object::key));
+            }
+            String root = ROOTS[random.nextInt(ROOTS.length)];
+            assertSameTree(legacy.buildTree(objects, root), query.buildTree(objects, root), "round " + round + " root=" + root);
+        }
+    }
+
+    /**
+     * 测试按层级加载时展开层数不超过 treeMaxDepth，节点总数不超过 treeMaxNodes，超出部分的文件夹不展开
+     */
+    @Test
+    void lazyTreeIsBounded() {
+        InMemoryS3Client client = new InMemoryS3Client();
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < 5; j++) {
+                client.put("data/f" + i + "/s" + j + "/a.txt", new byte[]{1});
+            }
+        }
+        OssProperties properties = properties();
+        properties.setTreeMaxDepth(2);
+        properties.setTreeMaxNodes(15);
+        QueryOperations query = new QueryOperations(properties, client, null);
+
+        ObjectTreeNode root = query.getTreeList("bucket", "data", 20, 5, null);
+
+        Assertions.assertEquals(5, root.getChildren().size());
+        int nodes = 0;
+        for (ObjectTreeNode folder : root.getChildren()) {
+            nodes++;
+            if (folder.getChildren() != null) {
+                nodes += folder.getChildren().size();
+                // 第三层超过最大展开层数
+                folder.getChildren().forEach(e -> Assertions.assertNull(e.getChildren()));
+            }
+        }
+        Assertions.assertEquals(15, nodes);
+        Assertions.assertNotNull(root.getChildren().get(0).getChildren());
+        Assertions.assertNotNull(root.getChildren().get(1).getChildren());
+        Assertions.assertNull(root.getChildren().get(2).getChildren());
+        // 根目录列举一次，展开两个文件夹
+        Assertions.assertEquals(3, client.listRequests.get());
+
+        // 未展开的文件夹可单独加载
+        ObjectTreeNode folder = query.getTreeList("bucket", "data/f4", 1, 5, null);
+        Assertions.assertEquals(5, folder.getChildren().size());
+    }
+
+    private static List<S3Object> randomObjects(Random random, int count) {
+        List<S3Object> objects = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder key = new StringBuilder();
+            int depth = random.nextInt(5);
+            for (int d = 0; d <= depth; d++) {
+                if (d > 0) {
+                    key.append('/');
+                }
+                key.append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+            }
+            if (random.nextInt(8) == 0) {
+                key.append('/');
+            }
+            objects.add(S3Object.builder()
+                    .key(key.toString())
+                    .size((long) random.nextInt(1000))
+                    .lastModified(Instant.ofEpochSecond(random.nextInt(1_000_000)))
+                    .build());
+        }
+        return objects;
+    }
+
+    private static void assertSameTree(ObjectTreeNode expected, ObjectTreeNode actual, String path) {
+        String message = path + "/" + expected.getName();
+        Assertions.assertEquals(expected.getName(), actual.getName(), message);
+        Assertions.assertEquals(expected.getUri(), actual.getUri(), message);
+        Assertions.assertEquals(expected.getUrl(), actual.getUrl(), message);
+        Assertions.assertEquals(expected.getType(), actual.getType(), message);
+        Assertions.assertEquals(expected.getSize(), actual.getSize(), message);
+        Assertions.assertEquals(expected.getExt(), actual.getExt(), message);
+        Assertions.assertEquals(expected.getUploadTime(), actual.getUploadTime(), message);
+        List<ObjectTreeNode> expectedChildren = expected.getChildren();
+        List<ObjectTreeNode> actualChildren = actual.getChildren();
+        if (expectedChildren == null) {
+            Assertions.assertNull(actualChildren, message);
+            return;
+        }
+        Assertions.assertNotNull(actualChildren, message);
+        Assertions.assertEquals(expectedChildren.size(), actualChildren.size(), message);
+        for (int i = 0; i < expectedChildren.size(); i++) {
+            assertSameTree(expectedChildren.get(i), actualChildren.get(i), message);
+        }
+    }
+
+    static OssProperties properties() {
+        OssProperties properties = new OssProperties();
+        properties.setEndpoint("http://localhost:9000");
+        properties.setBucketName("bucket");
+        return properties;
+    }
+}
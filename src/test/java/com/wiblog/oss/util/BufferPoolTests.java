@@ -0,0 +1,123 @@
+package com.wiblog.oss.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 堆外缓冲区池
+ *
+ * @author panwm
+ * @since 2024/10/6 16:10
+ */
+class BufferPoolTests {
+
+    /**
+     * 测试堆外内存总量受上限约束，超出上限的请求被拒绝
+     */
+    @Test
+    void capsAllocatedBytes() throws InterruptedIOException {
+        BufferPool pool = new BufferPool(1024, 4096 + 100);
+        Assertions.assertEquals(4, pool.getMaxBuffers());
+
+        ByteBuffer[] buffers = pool.acquire(4096);
+        Assertions.assertEquals(4, buffers.length);
+        Assertions.assertEquals(4096, pool.getAllocatedBytes());
+        for (ByteBuffer buffer : buffers) {
+            Assertions.assertTrue(buffer.isDirect());
+        }
+        pool.release(buffers);
+        Assertions.assertEquals(4, pool.getAvailable());
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> pool.acquire(4097));
+        Assertions.assertEquals(4096, pool.getAllocatedBytes());
+    }
+
+    /**
+     * 测试大于单个缓冲区的请求由多个缓冲区承接，最后一个的 limit 为剩余字节数
+     */
+    @Test
+    void chainsBuffersForLargeRequests() throws InterruptedIOException {
+        BufferPool pool = new BufferPool(1024, 8192);
+
+        ByteBuffer[] buffers = pool.acquire(2500);
+        Assertions.assertEquals(3, buffers.length);
+        Assertions.assertEquals(1024, buffers[0].limit());
+        Assertions.assertEquals(1024, buffers[1].limit());
+        Assertions.assertEquals(452, buffers[2].limit());
+        pool.release(buffers);
+
+        ByteBuffer[] exact = pool.acquire(1024);
+        Assertions.assertEquals(1, exact.length);
+        Assertions.assertEquals(1024, exact[0].limit());
+        pool.release(exact);
+
+        ByteBuffer[] empty = pool.acquire(0);
+        Assertions.assertEquals(1, empty.length);
+        Assertions.assertEquals(0, empty[0].limit());
+        pool.release(empty);
+    }
+
+    /**
+     * 测试池耗尽时 acquire 阻塞，直到有缓冲区归还
+     */
+    @Test
+    void blocksWhenExhausted() throws Exception {
+        BufferPool pool = new BufferPool(1024, 2048);
+        ByteBuffer first = pool.acquire();
+        ByteBuffer second = pool.acquire();
+
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<ByteBuffer> waiting = CompletableFuture.supplyAsync(() -> {
+            started.countDown();
+            try {
+                return pool.acquire();
+            } catch (InterruptedIOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Assertions.assertThrows(TimeoutException.class, () -> waiting.get(200, TimeUnit.MILLISECONDS));
+
+        pool.release(second);
+        Assertions.assertSame(second, waiting.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(2048, pool.getAllocatedBytes());
+        pool.release(first);
+    }
+
+    /**
+     * 测试新建计为未命中、复用计为命中，非本池的缓冲区不被回收
+     */
+    @Test
+    void countsHitsAndMisses() throws InterruptedIOException {
+        BufferPool pool = new BufferPool(1024, 4096);
+
+        ByteBuffer buffer = pool.acquire();
+        Assertions.assertEquals(0, pool.getHits());
+        Assertions.assertEquals(1, pool.getMisses());
+        buffer.put((byte) 1);
+        pool.release(buffer);
+
+        ByteBuffer reused = pool.acquire();
+        Assertions.assertSame(buffer, reused);
+        Assertions.assertEquals(0, reused.position());
+        Assertions.assertEquals(1, pool.getHits());
+        Assertions.assertEquals(1, pool.getMisses());
+
+        ByteBuffer[] chain = pool.acquire(2048);
+        Assertions.assertEquals(1, pool.getHits());
+        Assertions.assertEquals(3, pool.getMisses());
+        pool.release(chain);
+        pool.release(reused);
+
+        pool.release(ByteBuffer.allocate(1024));
+        pool.release(ByteBuffer.allocateDirect(512));
+        Assertions.assertEquals(3, pool.getAvailable());
+    }
+}
@@ -0,0 +1,124 @@
+package com.wiblog.oss.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Range 请求头解析与合并
+ *
+ * @author panwm
+ * @since 2024/10/5 10:12
+ */
+class ByteRangeTests {
+
+    /**
+     * 测试普通区间，结束位置超出文件大小时截断
+     */
+    @Test
+    void parseClosedRange() {
+        List<ByteRange> ranges = ByteRange.parse("bytes=0-99", 1000);
+        Assertions.assertEquals(1, ranges.size());
+        Assertions.assertEquals(0, ranges.get(0).getStart());
+        Assertions.assertEquals(99, ranges.get(0).getEnd());
+
+        ranges = ByteRange.parse("bytes=900-5000", 1000);
+        Assertions.assertEquals(999, ranges.get(0).getEnd());
+        Assertions.assertEquals(100, ranges.get(0).length());
+    }
+
+    /**
+     * 测试后缀区间 -n
+     */
+    @Test
+    void parseSuffixRange() {
+        List<ByteRange> ranges = ByteRange.parse("bytes=-100", 1000);
+        Assertions.assertEquals(1, ranges.size());
+        Assertions.assertEquals(900, ranges.get(0).getStart());
+        Assertions.assertEquals(999, ranges.get(0).getEnd());
+
+        // 后缀超过文件大小时返回整个文件
+        ranges = ByteRange.parse("bytes=-5000", 1000);
+        Assertions.assertEquals(0, ranges.get(0).getStart());
+        Assertions.assertEquals(999, ranges.get(0).getEnd());
+
+        // -0 无法满足
+        Assertions.assertTrue(ByteRange.parse("bytes=-0", 1000).isEmpty());
+    }
+
+    /**
+     * 测试开放区间 a-
+     */
+    @Test
+    void parseOpenEndedRange() {
+        List<ByteRange> ranges = ByteRange.parse("bytes=500-", 1000);
+        Assertions.assertEquals(1, ranges.size());
+        Assertions.assertEquals(500, ranges.get(0).getStart());
+        Assertions.assertEquals(999, ranges.get(0).getEnd());
+        Assertions.assertEquals("bytes 500-999/1000", ranges.get(0).toContentRange(1000));
+    }
+
+    /**
+     * 测试无法满足的区间返回空列表，可满足的部分保留
+     */
+    @Test
+    void parseUnsatisfiableRange() {
+        Assertions.assertTrue(ByteRange.parse("bytes=1000-1100", 1000).isEmpty());
+        Assertions.assertTrue(ByteRange.parse("bytes=0-", 0).isEmpty());
+        Assertions.assertTrue(ByteRange.parse("bytes=-10", 0).isEmpty());
+
+        List<ByteRange> ranges = ByteRange.parse("bytes=2000-3000, 0-9", 1000);
+        Assertions.assertEquals(1, ranges.size());
+        Assertions.assertEquals("0-9", ranges.get(0).toString());
+    }
+
+    /**
+     * 测试语法错误以及超出分段数上限时返回null
+     */
+    @Test
+    void parseInvalidRange() {
+        Assertions.assertNull(ByteRange.parse(null, 1000));
+        Assertions.assertNull(ByteRange.parse("items=0-9", 1000));
+        Assertions.assertNull(ByteRange.parse("bytes=abc", 1000));
+        Assertions.assertNull(ByteRange.parse("bytes=9-0", 1000));
+        Assertions.assertNull(ByteRange.parse("bytes=x-9", 1000));
+
+        StringBuilder header = new StringBuilder("bytes=0-0");
+        for (int i = 1; i < 100; i++) {
+            header.append(',').append(i).append('-').append(i);
+        }
+        Assertions.assertEquals(100, ByteRange.parse(header.toString(), 1000).size());
+        header.append(",100-100");
+        Assertions.assertNull(ByteRange.parse(header.toString(), 1000));
+    }
+
+    /**
+     * 测试排序合并重叠、相邻以及间隔较小的分段
+     */
+    @Test
+    void coalesce() {
+        List<ByteRange> ranges = Arrays.asList(
+                new ByteRange(200, 299),
+                new ByteRange(0, 99),
+                new ByteRange(50, 149),
+                new ByteRange(150, 159),
+                new ByteRange(1000, 1099));
+
+        List<ByteRange> merged = ByteRange.coalesce(ranges, 0);
+        Assertions.assertEquals(3, merged.size());
+        Assertions.assertEquals("0-159", merged.get(0).toString());
+        Assertions.assertEquals("200-299", merged.get(1).toString());
+        Assertions.assertEquals("1000-1099", merged.get(2).toString());
+
+        merged = ByteRange.coalesce(ranges, 40);
+        Assertions.assertEquals(2, merged.size());
+        Assertions.assertEquals("0-299", merged.get(0).toString());
+
+        // 被包含的分段不缩小结束位置
+        merged = ByteRange.coalesce(Arrays.asList(new ByteRange(0, 999), new ByteRange(10, 19)), 0);
+        Assertions.assertEquals(1, merged.size());
+        Assertions.assertEquals("0-999", merged.get(0).toString());
+    }
+}
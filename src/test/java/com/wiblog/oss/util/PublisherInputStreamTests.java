@@ -0,0 +1,138 @@
+package com.wiblog.oss.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 异步字节发布者桥接输入流
+ *
+ * @author panwm
+ * @since 2024/10/5 10:40
+ */
+class PublisherInputStreamTests {
+
+    /**
+     * 测试仅在缓冲字节数低于 bufferSize 时才向上游请求
+     */
+    @Test
+    void backPressure() throws IOException {
+        PublisherInputStream in = new PublisherInputStream(10);
+        TestSubscription subscription = new TestSubscription();
+        in.onSubscribe(subscription);
+        Assertions.assertEquals(1, subscription.requested);
+
+        in.onNext(buffer(0, 8));
+        Assertions.assertEquals(2, subscription.requested);
+
+        // 缓冲已达上限，不再请求
+        in.onNext(buffer(8, 8));
+        Assertions.assertEquals(2, subscription.requested);
+
+        byte[] b = new byte[8];
+        Assertions.assertEquals(8, in.read(b, 0, 8));
+        Assertions.assertEquals(7, b[7]);
+        Assertions.assertEquals(2, subscription.requested);
+
+        // 第一块读完后释放，恢复请求
+        Assertions.assertEquals(8, in.read());
+        Assertions.assertEquals(3, subscription.requested);
+
+        in.onComplete();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assertions.assertEquals(7, in.writeTo(out));
+        Assertions.assertEquals(15, out.toByteArray()[6]);
+        Assertions.assertEquals(-1, in.read());
+    }
+
+    /**
+     * 测试跨缓冲块跳过
+     */
+    @Test
+    void skip() throws IOException {
+        PublisherInputStream in = new PublisherInputStream(100);
+        in.onSubscribe(new TestSubscription());
+        in.onNext(buffer(0, 4));
+        in.onNext(buffer(4, 4));
+        in.onNext(buffer(8, 4));
+        in.onComplete();
+
+        Assertions.assertEquals(6, in.skip(6));
+        Assertions.assertEquals(6, in.read());
+        Assertions.assertEquals(5, in.skip(100));
+        Assertions.assertEquals(-1, in.read());
+        Assertions.assertEquals(0, in.skip(1));
+    }
+
+    /**
+     * 测试关闭时取消订阅，关闭后到达的订阅直接取消
+     */
+    @Test
+    void cancelOnClose() {
+        PublisherInputStream in = new PublisherInputStream(100);
+        TestSubscription subscription = new TestSubscription();
+        in.onSubscribe(subscription);
+        in.onNext(buffer(0, 4));
+
+        in.close();
+        Assertions.assertTrue(subscription.cancelled);
+        Assertions.assertThrows(IOException.class, in::read);
+
+        // 关闭后到达的数据不再触发请求
+        int requested = subscription.requested;
+        in.onNext(buffer(4, 4));
+        Assertions.assertEquals(requested, subscription.requested);
+
+        PublisherInputStream closed = new PublisherInputStream(100);
+        closed.close();
+        TestSubscription late = new TestSubscription();
+        closed.onSubscribe(late);
+        Assertions.assertTrue(late.cancelled);
+        Assertions.assertEquals(0, late.requested);
+    }
+
+    /**
+     * 测试上游异常在读取时抛出
+     */
+    @Test
+    void error() throws IOException {
+        PublisherInputStream in = new PublisherInputStream(100);
+        in.onSubscribe(new TestSubscription());
+        in.onNext(buffer(0, 2));
+        in.onError(new IllegalStateException("boom"));
+
+        Assertions.assertEquals(0, in.read());
+        Assertions.assertEquals(1, in.read());
+        IOException e = Assertions.assertThrows(IOException.class, in::read);
+        Assertions.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    private static ByteBuffer buffer(int start, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (start + i);
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private static class TestSubscription implements Subscription {
+
+        private int requested;
+
+        private boolean cancelled;
+
+        @Override
+        public void request(long n) {
+            requested += n;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
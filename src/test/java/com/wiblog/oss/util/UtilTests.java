@@ -0,0 +1,83 @@
+package com.wiblog.oss.util;
+
+import org.apache.tika.Tika;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 工具类
+ *
+ * @author panwm
+ * @since 2024/10/6 14:20
+ */
+class UtilTests {
+
+    private static final byte[] PNG_HEADER = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 0x0D, 'I', 'H', 'D', 'R'};
+
+    private final Tika tika = new Tika();
+
+    /**
+     * 测试常用扩展名查表，结果与 Tika 一致且忽略大小写
+     */
+    @Test
+    void contentTypeFromTable() {
+        Assertions.assertEquals("image/jpeg", Util.getContentType("a/b/photo.jpg"));
+        Assertions.assertEquals("image/jpeg", Util.getContentType("a\\b\\PHOTO.JPG"));
+        Assertions.assertEquals(tika.detect("report.pdf"), Util.getContentType("docs/report.pdf"));
+        Assertions.assertEquals(tika.detect("a.docx"), Util.getContentType("a.docx"));
+    }
+
+    /**
+     * 测试非常用扩展名由 Tika 识别后缓存，缓存数量有上限
+     */
+    @Test
+    void contentTypeFromDetectedCache() {
+        Assertions.assertEquals(tika.detect("file.stl"), Util.getContentType("model.stl"));
+        int count = Util.getDetectedTypeCount();
+        Assertions.assertTrue(count >= 1);
+        Assertions.assertEquals(tika.detect("file.stl"), Util.getContentType("other.STL"));
+        Assertions.assertEquals(count, Util.getDetectedTypeCount());
+
+        for (int i = 0; i < 1500; i++) {
+            Assertions.assertEquals("application/octet-stream", Util.getContentType("file.qz" + i));
+        }
+        Assertions.assertEquals(1024, Util.getDetectedTypeCount());
+        // 超过上限后仍能识别，只是不再缓存
+        Assertions.assertEquals(tika.detect("file.wasm"), Util.getContentType("module.wasm"));
+        Assertions.assertEquals(1024, Util.getDetectedTypeCount());
+        Assertions.assertEquals(tika.detect("file.stl"), Util.getContentType("model.stl"));
+
+        // 过长的扩展名不进入缓存
+        Util.getContentType("file.abcdefghijklmnopqrstuvwxyz");
+        Assertions.assertEquals(1024, Util.getDetectedTypeCount());
+    }
+
+    /**
+     * 测试按文件名无法识别时读取文件头，并重置到起始位置
+     */
+    @Test
+    void contentTypeFromSniffing() throws IOException {
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(PNG_HEADER));
+        Assertions.assertEquals("image/png", Util.getContentType("upload/blob", in));
+        Assertions.assertEquals(0x89, in.read());
+
+        // 按文件名可以识别时不读取文件头
+        InputStream text = new BufferedInputStream(new ByteArrayInputStream(PNG_HEADER));
+        Assertions.assertEquals("text/plain", Util.getContentType("upload/a.txt", text));
+
+        // 不支持 mark/reset 的流不读取
+        InputStream unmarkable = new ByteArrayInputStream(PNG_HEADER) {
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        };
+        Assertions.assertEquals("application/octet-stream", Util.getContentType("upload/blob", unmarkable));
+        Assertions.assertEquals(0x89, unmarkable.read());
+    }
+}